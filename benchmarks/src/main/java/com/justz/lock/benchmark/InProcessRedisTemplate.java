@@ -0,0 +1,84 @@
+package com.justz.lock.benchmark;
+
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-process stand-in for Redis, covering what an exclusive lock of the
+ * {@link com.justz.lock.interceptor.SimpleLockManager} uses in the default poll mode:
+ * {@code SET key token NX PX lease}, and the release script deleting the key if it still holds
+ * the token. It measures the lock manager itself, without the network round trips.
+ */
+class InProcessRedisTemplate extends StringRedisTemplate {
+
+    private final ConcurrentMap<String, Entry> store = new ConcurrentHashMap<>(1024);
+
+    private final RedisConnection connection = (RedisConnection) Proxy.newProxyInstance(
+            InProcessRedisTemplate.class.getClassLoader(), new Class<?>[] {RedisConnection.class},
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("execute".equals(method.getName()) && "SET".equals(args[0])) {
+                        byte[][] setArgs = (byte[][]) args[1];
+                        return set(string(setArgs[0]), string(setArgs[1]), Long.parseLong(string(setArgs[4])));
+                    }
+                    // e.g. loading the scripts
+                    return null;
+                }
+            });
+
+    @Override
+    public <T> T execute(RedisCallback<T> action) {
+        return action.doInRedis(connection);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+        if (keys.size() != 1 || args.length != 1) {
+            throw new UnsupportedOperationException("only the release script of a poll mode exclusive lock " +
+                    "is supported");
+        }
+        Entry entry = store.get(keys.get(0));
+        boolean released = entry != null && entry.token.equals(args[0]) && store.remove(keys.get(0), entry);
+        return (T) Long.valueOf(released ? 1 : 0);
+    }
+
+    private String set(String key, String token, long leaseMillSeconds) {
+        Entry entry = new Entry(token, System.currentTimeMillis() + leaseMillSeconds);
+        Entry existing = store.putIfAbsent(key, entry);
+        if (existing == null) {
+            return "OK";
+        }
+        if (existing.expireAt <= System.currentTimeMillis() && store.replace(key, existing, entry)) {
+            return "OK";
+        }
+        return null;
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class Entry {
+
+        private final String token;
+
+        private final long expireAt;
+
+        private Entry(String token, long expireAt) {
+            this.token = token;
+            this.expireAt = expireAt;
+        }
+    }
+}
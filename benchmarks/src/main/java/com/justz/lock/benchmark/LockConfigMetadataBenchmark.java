@@ -0,0 +1,97 @@
+package com.justz.lock.benchmark;
+
+import com.justz.lock.LockManager;
+import com.justz.lock.annotation.Lock;
+import com.justz.lock.config.LockManagementConfigUtils;
+import com.justz.lock.interceptor.AnnotationLockConfigSource;
+import com.justz.lock.interceptor.LockInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metadata lookup of {@code LockAspectSupport#getLockConfigMetadata} done on every
+ * intercepted call, for a method with a lock operation and one without.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockConfigMetadataBenchmark {
+
+    public static class Service {
+
+        @Lock(key = "benchmark")
+        public void locked() {
+        }
+
+        public void unlocked() {
+        }
+    }
+
+    /**
+     * Exposes the protected lookup.
+     */
+    private static class MetadataLookup extends LockInterceptor {
+
+        Object lookup(Method method, Class<?> targetClass) {
+            return getLockConfigMetadata(method, targetClass);
+        }
+    }
+
+    private MetadataLookup lookup;
+
+    private Method locked;
+
+    private Method unlocked;
+
+    @Setup
+    public void setup() throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton(LockManagementConfigUtils.SIMPLE_LOCK_MANAGER_BEAN_NAME, new LockManager() {
+            @Override
+            public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+                return "token";
+            }
+
+            @Override
+            public void remove(String key, String token) {
+            }
+        });
+        lookup = new MetadataLookup();
+        lookup.setLockConfigSource(new AnnotationLockConfigSource());
+        lookup.setBeanFactory(beanFactory);
+        lookup.afterPropertiesSet();
+        locked = Service.class.getMethod("locked");
+        unlocked = Service.class.getMethod("unlocked");
+    }
+
+    @TearDown
+    public void tearDown() {
+        lookup.destroy();
+    }
+
+    @Benchmark
+    public Object lockedMethod() {
+        return lookup.lookup(locked, Service.class);
+    }
+
+    @Benchmark
+    public Object unlockedMethod() {
+        return lookup.lookup(unlocked, Service.class);
+    }
+}
@@ -0,0 +1,131 @@
+package com.justz.lock.benchmark;
+
+import com.justz.lock.LockManager;
+import com.justz.lock.annotation.Lock;
+import com.justz.lock.annotation.LockParam;
+import com.justz.lock.config.LockManagementConfigUtils;
+import com.justz.lock.interceptor.AnnotationLockConfigSource;
+import com.justz.lock.interceptor.LockInterceptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link LockInterceptor#invoke} through a real proxy. The lock manager grants
+ * every lock right away, so only the interceptor is measured, against the same method called
+ * directly and through a proxy without lock.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockInterceptorBenchmark {
+
+    public interface Service {
+
+        int unlocked(int value);
+
+        @Lock(key = "benchmark")
+        int lockedByKey(int value);
+
+        @Lock(prefix = "benchmark")
+        int lockedByParam(@LockParam int value);
+    }
+
+    private Service target;
+
+    private Service unlockedProxy;
+
+    private Service lockedProxy;
+
+    private LockInterceptor interceptor;
+
+    private int value = 42;
+
+    @Setup
+    public void setup() throws Exception {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton(LockManagementConfigUtils.SIMPLE_LOCK_MANAGER_BEAN_NAME, new LockManager() {
+            @Override
+            public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+                return "token";
+            }
+
+            @Override
+            public void remove(String key, String token) {
+            }
+        });
+        interceptor = new LockInterceptor();
+        interceptor.setLockConfigSource(new AnnotationLockConfigSource());
+        interceptor.setBeanFactory(beanFactory);
+        interceptor.afterPropertiesSet();
+
+        target = new Service() {
+            @Override
+            public int unlocked(int value) {
+                return value + 1;
+            }
+
+            @Override
+            public int lockedByKey(int value) {
+                return value + 1;
+            }
+
+            @Override
+            public int lockedByParam(int value) {
+                return value + 1;
+            }
+        };
+        ProxyFactory unlockedProxyFactory = new ProxyFactory(target);
+        unlockedProxyFactory.addInterface(Service.class);
+        unlockedProxy = (Service) unlockedProxyFactory.getProxy();
+        ProxyFactory lockedProxyFactory = new ProxyFactory(target);
+        lockedProxyFactory.addInterface(Service.class);
+        lockedProxyFactory.addAdvice(interceptor);
+        lockedProxy = (Service) lockedProxyFactory.getProxy();
+    }
+
+    @TearDown
+    public void tearDown() {
+        interceptor.destroy();
+    }
+
+    @Benchmark
+    public int direct() {
+        return target.lockedByKey(value);
+    }
+
+    @Benchmark
+    public int proxyWithoutInterceptor() {
+        return unlockedProxy.lockedByKey(value);
+    }
+
+    @Benchmark
+    public int interceptorWithoutLock() {
+        return lockedProxy.unlocked(value);
+    }
+
+    @Benchmark
+    public int interceptorLockedByKey() {
+        return lockedProxy.lockedByKey(value);
+    }
+
+    @Benchmark
+    public int interceptorLockedByParam() {
+        return lockedProxy.lockedByParam(value);
+    }
+}
@@ -0,0 +1,110 @@
+package com.justz.lock.benchmark;
+
+import com.justz.lock.LockManager;
+import com.justz.lock.interceptor.CoalescingLockManager;
+import com.justz.lock.interceptor.InMemoryLockManager;
+import com.justz.lock.interceptor.SimpleLockManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock and release of the {@link LockManager} implementations, the Redis ones against an
+ * {@link InProcessRedisTemplate}, with the threads spread over a number of keys. Attempts do not
+ * wait, so the contention shows as failed attempts instead of sleeps.
+ * <p>Run {@link #main} for 1 to 64 threads, or pass {@code -t} to the benchmarks jar.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockManagerBenchmark {
+
+    private static final long LEASE_MILL_SECONDS = 60000;
+
+    @Param({"simple", "coalescing", "memory"})
+    public String lockManager;
+
+    @Param({"1", "64"})
+    public int keyCount;
+
+    private SimpleLockManager simpleLockManager;
+
+    private InMemoryLockManager inMemoryLockManager;
+
+    private LockManager manager;
+
+    private String[] keys;
+
+    @Setup
+    public void setup() {
+        simpleLockManager = new SimpleLockManager(new InProcessRedisTemplate());
+        simpleLockManager.afterPropertiesSet();
+        switch (lockManager) {
+            case "simple":
+                manager = simpleLockManager;
+                break;
+            case "coalescing":
+                manager = new CoalescingLockManager(simpleLockManager);
+                break;
+            case "memory":
+                inMemoryLockManager = new InMemoryLockManager();
+                inMemoryLockManager.afterPropertiesSet();
+                manager = inMemoryLockManager;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown lock manager: " + lockManager);
+        }
+        keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "benchmark:" + i;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        simpleLockManager.destroy();
+        if (inMemoryLockManager != null) {
+            inMemoryLockManager.destroy();
+        }
+    }
+
+    @Benchmark
+    public boolean lockAndRemove() {
+        String key = keys[ThreadLocalRandom.current().nextInt(keys.length)];
+        String token = manager.lock(key, 0, LEASE_MILL_SECONDS);
+        if (token == null) {
+            return false;
+        }
+        manager.remove(key, token);
+        return true;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : new int[] {1, 4, 16, 64}) {
+            Options options = new OptionsBuilder()
+                    .include(LockManagerBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.justz.lock.benchmark;
+
+import com.justz.lock.annotation.LockParam;
+import com.justz.lock.interceptor.SimpleKeyGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SimpleKeyGenerator#generate} for methods with 1 to 5 {@link LockParam} parameters
+ * of the usual types.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleKeyGeneratorBenchmark {
+
+    public static class Service {
+
+        public void one(@LockParam String orderId) {
+        }
+
+        public void two(@LockParam String orderId, @LockParam long userId) {
+        }
+
+        public void three(@LockParam String orderId, @LockParam long userId, @LockParam TimeUnit type) {
+        }
+
+        public void four(@LockParam String orderId, @LockParam long userId, @LockParam TimeUnit type,
+                         @LockParam UUID requestId) {
+        }
+
+        public void five(@LockParam String orderId, @LockParam long userId, @LockParam TimeUnit type,
+                         @LockParam UUID requestId, @LockParam int shard) {
+        }
+    }
+
+    private static final Object[] PARAMS = {"20170405000123", 1234567L, TimeUnit.SECONDS,
+            UUID.fromString("123e4567-e89b-12d3-a456-426655440000"), 7};
+
+    @Param({"1", "2", "3", "4", "5"})
+    public int paramCount;
+
+    private final SimpleKeyGenerator keyGenerator = new SimpleKeyGenerator();
+
+    private Method method;
+
+    private Object[] params;
+
+    @Setup
+    public void setup() {
+        String[] names = {"one", "two", "three", "four", "five"};
+        for (Method candidate : Service.class.getMethods()) {
+            if (candidate.getName().equals(names[paramCount - 1])) {
+                method = candidate;
+            }
+        }
+        params = new Object[paramCount];
+        System.arraycopy(PARAMS, 0, params, 0, paramCount);
+    }
+
+    @Benchmark
+    public String generate() {
+        return keyGenerator.generate(Service.class, method, "order", params);
+    }
+
+    @Benchmark
+    public String generateWithoutPrefix() {
+        return keyGenerator.generate(Service.class, method, "", params);
+    }
+}
@@ -0,0 +1,25 @@
+package com.justz.lock;
+
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * {@link LockManager} also offering non-blocking locks: the calling thread is never parked,
+ * the waiting and retrying happen on timers of the lock manager.
+ */
+public interface AsyncLockManager extends LockManager {
+
+    /**
+     * Acquire the lock of the given key asynchronously.
+     * @return a future completed with the owner token, or with {@code null} if the lock could
+     * not be acquired within the max waiting time
+     * @see #lock(String, long, long)
+     */
+    ListenableFuture<String> lockAsync(String key, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Release the lock of the given key asynchronously, if it is still owned by the given token.
+     * @return a future completed once the lock is released
+     * @see #remove(String, String)
+     */
+    ListenableFuture<Void> removeAsync(String key, String token);
+}
@@ -0,0 +1,26 @@
+package com.justz.lock;
+
+/**
+ * {@link LockManager} able to issue a fencing token with each exclusive lock: a number
+ * increasing with every acquisition of the key, which the holder passes along to the storage
+ * it writes, so that the writes of a holder whose lease expired meanwhile, e.g. during a long
+ * GC pause, can be rejected as older than those of the next holder.
+ */
+public interface FencingLockManager extends LockManager {
+
+    /**
+     * Acquire the exclusive lock of the given key and issue a fencing token, in one step.
+     * The lock is released with {@link #remove(String, String)}.
+     * @param key the lock key
+     * @param maxWaitMillSeconds the max time to wait for the lock
+     * @param leaseMillSeconds the time after which the lock expires automatically
+     * @return the owner token, or {@code null} if the lock could not be acquired
+     */
+    String lockFenced(String key, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Return the fencing token issued with the given owner token.
+     * @param token the owner token returned by {@link #lockFenced}
+     */
+    long getFencingToken(String token);
+}
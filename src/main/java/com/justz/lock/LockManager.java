@@ -5,7 +5,20 @@ package com.justz.lock;
  */
 public interface LockManager {
 
-    boolean lock(String key, long maxWaitSecond);
+    /**
+     * Acquire the lock of the given key.
+     * @param key the lock key
+     * @param maxWaitMillSeconds the max time to wait for the lock
+     * @param leaseMillSeconds the time after which the lock expires automatically
+     * @return the owner token identifying this acquisition, or {@code null} if the lock
+     * could not be acquired
+     */
+    String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds);
 
-    void remove(String key);
+    /**
+     * Release the lock of the given key, if it is still owned by the given token.
+     * @param key the lock key
+     * @param token the owner token returned by {@link #lock}
+     */
+    void remove(String key, String token);
 }
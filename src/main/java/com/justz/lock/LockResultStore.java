@@ -0,0 +1,24 @@
+package com.justz.lock;
+
+/**
+ * Store of the encoded results of lock operations, keyed by lock key, through which an
+ * invocation can receive the result of an execution in another JVM instead of executing
+ * the method again.
+ */
+public interface LockResultStore {
+
+    /**
+     * Return the result stored for the given lock key.
+     * @param key the lock key
+     * @return the encoded result, or {@code null} if there is none or it expired
+     */
+    byte[] get(String key);
+
+    /**
+     * Store the result of an execution for the given lock key, replacing any previous one.
+     * @param key the lock key
+     * @param value the encoded result
+     * @param ttlMillSeconds the time after which the result expires
+     */
+    void put(String key, byte[] value, long ttlMillSeconds);
+}
@@ -0,0 +1,26 @@
+package com.justz.lock;
+
+import java.util.Collection;
+
+/**
+ * {@link LockManager} able to lock several keys at once, all or nothing.
+ */
+public interface MultiLockManager extends LockManager {
+
+    /**
+     * Acquire the locks of all the given keys, or none of them.
+     * @param keys the lock keys
+     * @param maxWaitMillSeconds the max time to wait for the locks
+     * @param leaseMillSeconds the time after which the locks expire automatically
+     * @return the owner token shared by the acquired locks, or {@code null} if they
+     * could not be acquired
+     */
+    String lock(Collection<String> keys, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Release the locks of the given keys still owned by the given token.
+     * @param keys the lock keys
+     * @param token the owner token returned by {@link #lock(Collection, long, long)}
+     */
+    void remove(Collection<String> keys, String token);
+}
@@ -0,0 +1,33 @@
+package com.justz.lock;
+
+/**
+ * {@link LockManager} also offering read/write locks: a key can be held by several readers
+ * at once, or by a single writer.
+ * <p>A key is either used with read/write locks or with exclusive locks, not both.
+ */
+public interface ReadWriteLockManager extends LockManager {
+
+    /**
+     * Acquire a read lock of the given key, shared with other readers.
+     * @return the owner token, or {@code null} if the lock could not be acquired
+     * @see #lock(String, long, long)
+     */
+    String lockRead(String key, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Acquire the write lock of the given key, excluding readers and other writers.
+     * @return the owner token, or {@code null} if the lock could not be acquired
+     * @see #lock(String, long, long)
+     */
+    String lockWrite(String key, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Release a read lock of the given key owned by the given token.
+     */
+    void removeRead(String key, String token);
+
+    /**
+     * Release the write lock of the given key, if it is owned by the given token.
+     */
+    void removeWrite(String key, String token);
+}
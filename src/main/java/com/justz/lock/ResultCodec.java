@@ -0,0 +1,22 @@
+package com.justz.lock;
+
+/**
+ * Encoding of the results of lock operations kept in a {@link LockResultStore}.
+ * A {@code null} result is stored as an empty value without going through the codec.
+ */
+public interface ResultCodec {
+
+    /**
+     * Encode the given result.
+     * @param value the result, never {@code null}
+     * @throws IllegalArgumentException if the value can not be encoded, it is then not stored
+     */
+    byte[] encode(Object value);
+
+    /**
+     * Decode a result encoded by {@link #encode}.
+     * @param bytes the encoded result, never empty
+     * @throws IllegalArgumentException if the bytes can not be decoded
+     */
+    Object decode(byte[] bytes);
+}
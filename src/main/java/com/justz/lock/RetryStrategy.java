@@ -0,0 +1,32 @@
+package com.justz.lock;
+
+/**
+ * Strategy deciding how long a contended acquire waits before its next attempt.
+ * <p>Implementations are shared by all the acquires using them, and must be thread-safe.
+ */
+public interface RetryStrategy {
+
+    /**
+     * Return the time to wait before the next attempt. The lock manager caps it by the
+     * remaining max waiting time.
+     * @param key the lock key the last attempt was blocked by
+     * @param failedAttempts the number of failed attempts of this acquire so far, at least 1
+     * @param previousDelayMillSeconds the delay returned for the previous attempt of this acquire,
+     * or 0 after the first one
+     * @return the delay in milliseconds
+     */
+    long nextDelay(String key, int failedAttempts, long previousDelayMillSeconds);
+
+    /**
+     * Return whether this strategy uses the hold times of the released locks. Lock managers only
+     * measure them, and call {@link #released}, when it does.
+     */
+    boolean needsHoldTimes();
+
+    /**
+     * Called when a lock acquired with this strategy is released, if {@link #needsHoldTimes}.
+     * @param key the lock key
+     * @param holdMillSeconds how long the lock was held
+     */
+    void released(String key, long holdMillSeconds);
+}
@@ -0,0 +1,14 @@
+package com.justz.lock;
+
+/**
+ * {@link LockManager} whose waiting between attempts can be tuned per lock operation.
+ */
+public interface RetryableLockManager extends LockManager {
+
+    /**
+     * Return a lock manager acquiring like this one, but waiting between attempts as the given
+     * strategy says. It shares the connections, listeners and lease renewal of this manager, and
+     * implements the same lock manager interfaces.
+     */
+    LockManager withRetryStrategy(RetryStrategy retryStrategy);
+}
@@ -0,0 +1,23 @@
+package com.justz.lock;
+
+/**
+ * {@link LockManager} also offering semaphores: a key can be held by a limited number of
+ * holders at once, each holding one permit with its own lease.
+ * <p>A key is either used as a semaphore or with other locks, not both.
+ */
+public interface SemaphoreLockManager extends LockManager {
+
+    /**
+     * Acquire one of the permits of the given key.
+     * @param key the semaphore key
+     * @param permits the max number of holders of the key
+     * @return the owner token of the permit, or {@code null} if no permit could be acquired
+     * @see #lock(String, long, long)
+     */
+    String lockPermit(String key, int permits, long maxWaitMillSeconds, long leaseMillSeconds);
+
+    /**
+     * Release the permit of the given key owned by the given token.
+     */
+    void removePermit(String key, String token);
+}
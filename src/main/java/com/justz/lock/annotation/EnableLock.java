@@ -1,5 +1,7 @@
 package com.justz.lock.annotation;
 
+import com.justz.lock.enumeration.LockStore;
+import com.justz.lock.enumeration.WaitMode;
 import org.springframework.context.annotation.AdviceMode;
 import org.springframework.context.annotation.Import;
 import org.springframework.core.Ordered;
@@ -42,4 +44,58 @@ public @interface EnableLock {
      * The default is {@link Ordered#LOWEST_PRECEDENCE - 1}.
      */
     int order() default Ordered.LOWEST_PRECEDENCE - 1;
+
+    /**
+     * Indicate how the default lock manager waits for a contended lock.
+     * The default is {@link WaitMode#POLL}.
+     * <p>{@link WaitMode#SUBSCRIBE} and {@link WaitMode#FAIR} should be enabled on all nodes
+     * sharing the lock keys, as only those publish release notifications, and with
+     * {@link WaitMode#FAIR} only those respect the order of the waiting queue.
+     * @see WaitMode
+     */
+    WaitMode waitMode() default WaitMode.POLL;
+
+    /**
+     * Indicate whether the default lock manager renews the leases of the locks held by
+     * this JVM until they are released, so long running methods do not lose their lock
+     * while {@link Lock#leaseMillSeconds()} can stay short. The default is {@code false}.
+     */
+    boolean watchdog() default false;
+
+    /**
+     * Indicate whether threads of this JVM contending for the same key first queue on a
+     * local lock, so only one of them competes for the distributed lock at a time and the
+     * others take over in order when it is released. The default is {@code false}.
+     */
+    boolean localCoalescing() default false;
+
+    /**
+     * Indicate whether the leases of the lock operations without a fixed
+     * {@link Lock#leaseMillSeconds()} are sized from the execution times observed for their
+     * method, at the 99.9th percentile times 3, within {@link #minLeaseMillSeconds()} and
+     * {@link #maxLeaseMillSeconds()}. The default is {@code false}, i.e. a lease of 60 seconds.
+     */
+    boolean adaptiveLease() default false;
+
+    /**
+     * The lower bound of the adaptive leases. The default is 3 seconds, three times the interval
+     * of the {@link #watchdog()}, so that a short lease leaves room for a renewal round trip.
+     */
+    long minLeaseMillSeconds() default 3000;
+
+    /**
+     * The upper bound of the adaptive leases, also used until enough executions are observed.
+     * The default is 60 seconds.
+     */
+    long maxLeaseMillSeconds() default 60000;
+
+    /**
+     * Indicate where the default lock manager keeps the locks. The default is
+     * {@link LockStore#REDIS}, which requires a {@code StringRedisTemplate} bean.
+     * <p>With {@link LockStore#MEMORY} the locks only exclude the threads of this JVM, and
+     * {@link #waitMode()} and {@link #watchdog()} do not apply. A lock manager returned by a
+     * {@link LockConfigurer} takes precedence over both.
+     * @see LockStore
+     */
+    LockStore store() default LockStore.REDIS;
 }
@@ -1,6 +1,7 @@
 package com.justz.lock.annotation;
 
 import com.justz.lock.enumeration.ActionType;
+import com.justz.lock.enumeration.LockMode;
 
 import java.lang.annotation.*;
 
@@ -12,16 +13,88 @@ import java.lang.annotation.*;
 @Documented
 public @interface Lock {
 
+    /**
+     * The key to lock. A key containing Spring Expression Language (SpEL) expressions delimited
+     * by <code>#{</code> and <code>}</code>, e.g. <code>"order:#{#order.customerId}:#{#order.region}"</code>,
+     * is a template evaluated on every invocation; any other key, e.g. {@code "job#nightly"}, is
+     * used literally.
+     * <p>The arguments can be referenced by parameter name, or as {@code #p0}/{@code #a0}.
+     * {@code #root.method}, {@code #root.target} and {@code #root.args} are also available.
+     */
     String key() default "";
 
     String prefix() default "";
 
     long maxWaitMillSeconds() default 5000;
 
+    /**
+     * The time after which the lock expires automatically if it is not removed,
+     * in case the holder dies before releasing it.
+     * <p>By default the lease is 60 seconds, or sized from the execution times of the method
+     * if {@link EnableLock#adaptiveLease()} is enabled. A positive value pins the lease.
+     */
+    long leaseMillSeconds() default 0;
+
     String keyGenerator() default "";
 
     String lockManager() default "";
 
+    /**
+     * The bean name of the {@link com.justz.lock.RetryStrategy} deciding how long to wait between
+     * the attempts to acquire the lock. Requires a {@link com.justz.lock.RetryableLockManager}.
+     * Defaults to the strategy of the lock manager.
+     */
+    String retryStrategy() default "";
+
     ActionType actionAfterAcquireFailed() default ActionType.THROW_EXCEPTION;
 
+    /**
+     * The lock mode. {@link LockMode#READ} and {@link LockMode#WRITE} require a
+     * {@link com.justz.lock.ReadWriteLockManager}; a key must not be locked both in
+     * these modes and in {@link LockMode#EXCLUSIVE} mode.
+     */
+    LockMode mode() default LockMode.EXCLUSIVE;
+
+    /**
+     * The number of invocations allowed to hold the key at once. A value greater than 1 turns
+     * the lock into a semaphore, which requires a {@link com.justz.lock.SemaphoreLockManager}
+     * and the {@link LockMode#EXCLUSIVE} mode.
+     */
+    int permits() default 1;
+
+    /**
+     * Whether the lock issues a fencing token, exposed to the method through a {@link LockToken}
+     * parameter and {@link com.justz.lock.interceptor.LockTokenHolder}. Implied by a
+     * {@link LockToken} parameter. Requires a {@link com.justz.lock.FencingLockManager}, and a
+     * single key in the {@link LockMode#EXCLUSIVE} mode with 1 permit.
+     */
+    boolean fencing() default false;
+
+    /**
+     * Whether the invocations of this JVM contending for the same key share the outcome of
+     * the one in flight: they wait for it, at most {@link #maxWaitMillSeconds()}, and receive
+     * its result or exception instead of executing the method again. Only supported for a
+     * single key and a method not returning a future.
+     * @see #resultTtlMillSeconds()
+     */
+    boolean singleFlight() default false;
+
+    /**
+     * The time during which the result of an execution is published to the invocations of
+     * other JVMs: one acquiring the lock within that time receives the result instead of
+     * executing the method again. Requires {@link #singleFlight()} or {@link #idempotent()},
+     * and a {@link com.justz.lock.LockResultStore}, by default on the {@code StringRedisTemplate}.
+     * The default is 0, i.e. results are not published.
+     */
+    long resultTtlMillSeconds() default 0;
+
+    /**
+     * Whether the invocations are deduplicated by key: the result of a successful execution
+     * is stored for {@link #resultTtlMillSeconds()}, which is required, and the invocations
+     * within that time receive it without locking or executing again. An invocation arriving
+     * during the execution waits for the lock, at most {@link #maxWaitMillSeconds()}, then
+     * receives the result. Only supported for a single key and a method not returning a future.
+     */
+    boolean idempotent() default false;
+
 }
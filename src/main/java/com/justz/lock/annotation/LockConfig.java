@@ -14,4 +14,6 @@ public @interface LockConfig {
     String keyGenerator() default "";
 
     String lockManager() default "";
+
+    String retryStrategy() default "";
 }
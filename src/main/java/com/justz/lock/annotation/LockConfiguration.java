@@ -2,6 +2,8 @@ package com.justz.lock.annotation;
 
 import com.justz.lock.LockManager;
 import com.justz.lock.config.LockManagementConfigUtils;
+import com.justz.lock.enumeration.LockStore;
+import com.justz.lock.enumeration.WaitMode;
 import com.justz.lock.interceptor.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -19,7 +21,8 @@ import static com.justz.lock.config.LockManagementConfigUtils.SIMPLE_LOCK_MANAGE
 @Configuration
 public class LockConfiguration extends AbstractLockConfiguration {
 
-    @Autowired
+    // not required when the locks are kept in memory
+    @Autowired(required = false)
     private StringRedisTemplate stringRedisTemplate;
 
     @Bean(name = LockManagementConfigUtils.LOCK_ADVISOR_BEAN_NAME)
@@ -43,12 +46,35 @@ public class LockConfiguration extends AbstractLockConfiguration {
     public LockInterceptor lockInterceptor() {
         LockInterceptor interceptor = new LockInterceptor();
         interceptor.setLockConfigSource(lockConfigSource());
+        interceptor.setLocalCoalescing(this.enableLock.getBoolean("localCoalescing"));
+        if (this.enableLock.getBoolean("adaptiveLease")) {
+            AdaptiveLeasePolicy adaptiveLeasePolicy = new AdaptiveLeasePolicy();
+            adaptiveLeasePolicy.setMinLeaseMillSeconds(this.enableLock.<Long>getNumber("minLeaseMillSeconds"));
+            adaptiveLeasePolicy.setMaxLeaseMillSeconds(this.enableLock.<Long>getNumber("maxLeaseMillSeconds"));
+            interceptor.setAdaptiveLeasePolicy(adaptiveLeasePolicy);
+        }
+        if (stringRedisTemplate != null && this.enableLock.<LockStore>getEnum("store") == LockStore.REDIS) {
+            interceptor.setResultStore(new RedisLockResultStore(stringRedisTemplate));
+        }
         return interceptor;
     }
 
     @Bean(name = SIMPLE_LOCK_MANAGER_BEAN_NAME)
     public LockManager simpleLockManager() {
-        return new SimpleLockManager(stringRedisTemplate);
+        if (this.lockManager != null) {
+            return this.lockManager;
+        }
+        if (this.enableLock.<LockStore>getEnum("store") == LockStore.MEMORY) {
+            return new InMemoryLockManager();
+        }
+        if (stringRedisTemplate == null) {
+            throw new IllegalStateException("No StringRedisTemplate found for the Redis lock manager, define one, " +
+                    "or use @EnableLock(store = LockStore.MEMORY) to keep the locks in this JVM");
+        }
+        SimpleLockManager lockManager = new SimpleLockManager(stringRedisTemplate);
+        lockManager.setWaitMode(this.enableLock.<WaitMode>getEnum("waitMode"));
+        lockManager.setWatchdogEnabled(this.enableLock.getBoolean("watchdog"));
+        return lockManager;
     }
 
 }
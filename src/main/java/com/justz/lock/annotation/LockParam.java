@@ -5,6 +5,9 @@ import com.justz.lock.interceptor.SimpleKeyGenerator;
 
 /**
  * Indicate the param will be used to generate lock key
+ * <p>If the param is a collection or an array, one key is generated for each element and
+ * all of them are locked together, all or nothing. The lock manager must then implement
+ * {@link com.justz.lock.MultiLockManager}.
  *
  * @see SimpleKeyGenerator
  */
@@ -12,4 +15,16 @@ import com.justz.lock.interceptor.SimpleKeyGenerator;
 @Retention(RetentionPolicy.RUNTIME)
 @Documented
 public @interface LockParam {
+
+    /**
+     * Whether the value of this parameter is the hash tag of the generated keys: it is enclosed
+     * in braces, e.g. {@code order:{42}:7}, and only this part of the keys is hashed by Redis
+     * Cluster and the {@code ShardedLockManager}. The keys locked together by a multi-key method
+     * then share a slot or an instance, while the keys of other values spread over the others.
+     * <p>At most one parameter is the hash tag, and not the collection or array one, whose
+     * elements would each get their own. The methods locking the same resources must tag the
+     * same part of their keys. Without a tagged parameter, a prefix written in braces, e.g.
+     * {@code {order}}, is the hash tag of all the keys of the prefix. The default is {@code false}.
+     */
+    boolean hashTag() default false;
 }
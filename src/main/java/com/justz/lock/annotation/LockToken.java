@@ -0,0 +1,17 @@
+package com.justz.lock.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Indicate the {@code long} param receives the fencing token of the lock, whatever value the
+ * caller passed. The lock manager must implement {@link com.justz.lock.FencingLockManager}.
+ * <p>The token is also bound to the invoking thread, see
+ * {@link com.justz.lock.interceptor.LockTokenHolder}.
+ *
+ * @see Lock#fencing()
+ */
+@Target({ElementType.PARAMETER})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface LockToken {
+}
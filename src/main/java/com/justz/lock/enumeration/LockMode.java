@@ -0,0 +1,22 @@
+package com.justz.lock.enumeration;
+
+/**
+ * Mode of a lock
+ */
+public enum LockMode {
+
+    /**
+     * mutual exclusion between all holders
+     */
+    EXCLUSIVE,
+
+    /**
+     * shared with other readers, excluded by writers
+     */
+    READ,
+
+    /**
+     * excludes readers and other writers
+     */
+    WRITE
+}
@@ -0,0 +1,17 @@
+package com.justz.lock.enumeration;
+
+/**
+ * Where the default lock manager keeps the locks
+ */
+public enum LockStore {
+
+    /**
+     * in Redis, shared by all the nodes using the same keys
+     */
+    REDIS,
+
+    /**
+     * in this JVM, for single instance deployments and tests without a Redis server
+     */
+    MEMORY
+}
@@ -0,0 +1,24 @@
+package com.justz.lock.enumeration;
+
+/**
+ * How a contended acquire waits for the lock to be released
+ */
+public enum WaitMode {
+
+    /**
+     * retry at a fixed interval
+     */
+    POLL,
+
+    /**
+     * wait for the release notification published by the holder,
+     * retry at a long interval only as a safety net
+     */
+    SUBSCRIBE,
+
+    /**
+     * like {@link #SUBSCRIBE}, but the waiters of an exclusive lock queue in FIFO order
+     * and a release only wakes up the next one
+     */
+    FAIR
+}
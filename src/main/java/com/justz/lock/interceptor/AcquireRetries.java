@@ -0,0 +1,42 @@
+package com.justz.lock.interceptor;
+
+/**
+ * Number of retries of the last blocking acquire made by {@link SimpleLockManager} on the
+ * current thread, passed to the lock metrics of the interceptor without allocating.
+ * <p>Nothing is recorded until an interceptor with lock metrics {@link #enable enables} it.
+ */
+final class AcquireRetries {
+
+    private static final ThreadLocal<int[]> retries = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[] {-1};
+        }
+    };
+
+    private static volatile boolean enabled;
+
+    private AcquireRetries() {
+    }
+
+    static void enable() {
+        enabled = true;
+    }
+
+    static void reset() {
+        retries.get()[0] = -1;
+    }
+
+    static void record(int count) {
+        if (enabled) {
+            retries.get()[0] = count;
+        }
+    }
+
+    /**
+     * @return the number of retries recorded since the last {@link #reset()}, or -1 if none
+     */
+    static int get() {
+        return retries.get()[0];
+    }
+}
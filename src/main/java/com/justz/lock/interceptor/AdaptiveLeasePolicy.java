@@ -0,0 +1,94 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.util.Assert;
+
+/**
+ * Sizes the lease of the lock operations without a fixed {@code leaseMillSeconds} from the
+ * execution times observed for their method: a high percentile of the execution time times a
+ * safety factor, within configured bounds.
+ * <p>Until enough executions are observed, the max lease is used.
+ */
+public class AdaptiveLeasePolicy {
+
+    private long minLeaseMillSeconds = 3000;
+
+    private long maxLeaseMillSeconds = 60000;
+
+    private double percentile = 0.999;
+
+    private double safetyFactor = 3;
+
+    private int minSamples = 100;
+
+    public long getMinLeaseMillSeconds() {
+        return minLeaseMillSeconds;
+    }
+
+    /**
+     * Set the lower bound of the leases. The default is 3 seconds, three times the interval of
+     * the watchdog of {@link SimpleLockManager}, so that a short lease leaves room for a renewal.
+     */
+    public void setMinLeaseMillSeconds(long minLeaseMillSeconds) {
+        Assert.isTrue(minLeaseMillSeconds > 0, "minLeaseMillSeconds must be positive");
+        this.minLeaseMillSeconds = minLeaseMillSeconds;
+    }
+
+    public long getMaxLeaseMillSeconds() {
+        return maxLeaseMillSeconds;
+    }
+
+    public void setMaxLeaseMillSeconds(long maxLeaseMillSeconds) {
+        this.maxLeaseMillSeconds = maxLeaseMillSeconds;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Set the percentile of the execution times the lease is based on. The default is 0.999.
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public double getSafetyFactor() {
+        return safetyFactor;
+    }
+
+    /**
+     * Set the factor applied to the percentile of the execution times. The default is 3.
+     */
+    public void setSafetyFactor(double safetyFactor) {
+        this.safetyFactor = safetyFactor;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Set the number of executions to observe before the lease is sized from them.
+     * The default is 100.
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Check that the bounds are consistent, once all of them are set.
+     */
+    void validate() {
+        Assert.isTrue(minLeaseMillSeconds <= maxLeaseMillSeconds,
+                "minLeaseMillSeconds must not be greater than maxLeaseMillSeconds");
+    }
+
+    long leaseFor(ExecutionTimeHistogram executionTimes) {
+        long executionTime = executionTimes.percentile(percentile, minSamples);
+        if (executionTime < 0) {
+            return maxLeaseMillSeconds;
+        }
+        long lease = (long) Math.ceil(executionTime * safetyFactor);
+        return Math.max(minLeaseMillSeconds, Math.min(maxLeaseMillSeconds, lease));
+    }
+}
@@ -0,0 +1,74 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.RetryStrategy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link RetryStrategy} sized from the hold times observed for each key: a waiter retries
+ * after about half of the average hold time, so short critical sections are retried quickly
+ * and long ones do not cost a round trip every few milliseconds.
+ * <p>The average is an exponentially weighted moving average of the hold times of the locks
+ * released by this JVM. Keys without observations retry at the initial delay. At most
+ * {@code maxKeys} keys are tracked, the least recently used ones are forgotten first, so keys
+ * which are no longer locked do not keep the newer ones at the initial delay.
+ */
+public class AdaptiveRetryStrategy implements RetryStrategy {
+
+    // weight of a new observation in the moving average, in 1/8
+    private static final int WEIGHT = 2;
+
+    private final long initialDelayMillSeconds;
+
+    private final long minDelayMillSeconds;
+
+    private final long maxDelayMillSeconds;
+
+    // the average hold times in access order, guarded by itself
+    private final Map<String, Long> averageHoldTimes;
+
+    public AdaptiveRetryStrategy() {
+        this(50, 1, 1000, 10000);
+    }
+
+    public AdaptiveRetryStrategy(long initialDelayMillSeconds, long minDelayMillSeconds, long maxDelayMillSeconds,
+                                 final int maxKeys) {
+        this.initialDelayMillSeconds = initialDelayMillSeconds;
+        this.minDelayMillSeconds = minDelayMillSeconds;
+        this.maxDelayMillSeconds = maxDelayMillSeconds;
+        this.averageHoldTimes = new LinkedHashMap<String, Long>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+
+    @Override
+    public long nextDelay(String key, int failedAttempts, long previousDelayMillSeconds) {
+        Long average;
+        synchronized (averageHoldTimes) {
+            average = averageHoldTimes.get(key);
+        }
+        long delay = average != null ? average / 2 : initialDelayMillSeconds;
+        // jitter of +-50%, so that waiters blocked at the same time do not retry in step
+        delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay + 1);
+        return Math.max(minDelayMillSeconds, Math.min(maxDelayMillSeconds, delay));
+    }
+
+    @Override
+    public boolean needsHoldTimes() {
+        return true;
+    }
+
+    @Override
+    public void released(String key, long holdMillSeconds) {
+        synchronized (averageHoldTimes) {
+            Long average = averageHoldTimes.get(key);
+            averageHoldTimes.put(key, average == null ? holdMillSeconds :
+                    average + (holdMillSeconds - average) * WEIGHT / 8);
+        }
+    }
+}
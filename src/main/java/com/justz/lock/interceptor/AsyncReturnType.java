@@ -0,0 +1,170 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Future type returned by a method whose work completes asynchronously, so that its lock
+ * is held until the returned future completes.
+ * <p>Supports Spring's {@link ListenableFuture}, and {@link CompletableFuture} or
+ * {@link CompletionStage} when running on Java 8.
+ */
+abstract class AsyncReturnType {
+
+    private static final boolean completableFuturePresent = ClassUtils.isPresent(
+            "java.util.concurrent.CompletableFuture", AsyncReturnType.class.getClassLoader());
+
+    private static final AsyncReturnType LISTENABLE_FUTURE = new ListenableFutureReturnType();
+
+    /**
+     * Return the async return type of the given method, or {@code null} if it returns
+     * anything else.
+     */
+    static AsyncReturnType forMethod(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (ListenableFuture.class == returnType) {
+            return LISTENABLE_FUTURE;
+        }
+        if (completableFuturePresent) {
+            return CompletableFutureDelegate.forReturnType(returnType);
+        }
+        return null;
+    }
+
+    /**
+     * Create a pending future handed to the caller before the method is invoked.
+     */
+    abstract Object newResult();
+
+    abstract void complete(Object result, Object value);
+
+    abstract void fail(Object result, Throwable ex);
+
+    /**
+     * Complete the given pending future with the outcome of the given future returned by the method.
+     */
+    abstract void relay(Object future, Object result);
+
+    /**
+     * Run the given callback once the given future returned by the method completes, either way.
+     */
+    abstract void whenComplete(Object future, Runnable callback);
+
+
+    private static class ListenableFutureReturnType extends AsyncReturnType {
+
+        @Override
+        Object newResult() {
+            return new SettableListenableFuture<Object>();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void complete(Object result, Object value) {
+            ((SettableListenableFuture<Object>) result).set(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void fail(Object result, Throwable ex) {
+            ((SettableListenableFuture<Object>) result).setException(ex);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void relay(Object future, final Object result) {
+            ((ListenableFuture<Object>) future).addCallback(new ListenableFutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object value) {
+                    complete(result, value);
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    fail(result, ex);
+                }
+            });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void whenComplete(Object future, final Runnable callback) {
+            ((ListenableFuture<Object>) future).addCallback(new ListenableFutureCallback<Object>() {
+                @Override
+                public void onSuccess(Object value) {
+                    callback.run();
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    callback.run();
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Inner class to avoid a hard dependency on Java 8.
+     */
+    private static class CompletableFutureDelegate extends AsyncReturnType {
+
+        private static final AsyncReturnType INSTANCE = new CompletableFutureDelegate();
+
+        static AsyncReturnType forReturnType(Class<?> returnType) {
+            if (CompletableFuture.class == returnType || CompletionStage.class == returnType) {
+                return INSTANCE;
+            }
+            return null;
+        }
+
+        @Override
+        Object newResult() {
+            return new CompletableFuture<Object>();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void complete(Object result, Object value) {
+            ((CompletableFuture<Object>) result).complete(value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void fail(Object result, Throwable ex) {
+            ((CompletableFuture<Object>) result).completeExceptionally(ex);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void relay(Object future, final Object result) {
+            ((CompletionStage<Object>) future).whenComplete(new java.util.function.BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object value, Throwable ex) {
+                    if (ex != null) {
+                        fail(result, ex);
+                    } else {
+                        complete(result, value);
+                    }
+                }
+            });
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        void whenComplete(Object future, final Runnable callback) {
+            ((CompletionStage<Object>) future).whenComplete(new java.util.function.BiConsumer<Object, Throwable>() {
+                @Override
+                public void accept(Object value, Throwable ex) {
+                    callback.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.LockManager;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * {@link LockManager} decorator adding an in-process lock tier in front of a distributed one.
+ * <p>Threads of this JVM contending for the same key first queue on a local lock, so only one
+ * of them competes for the distributed lock at a time. When it releases, the local lock is
+ * handed off to the next queued thread in FIFO order, which then acquires the distributed lock.
+ * The time spent in the local queue is taken from the max waiting time.
+ */
+public class CoalescingLockManager implements LockManager {
+
+    private final LockManager delegate;
+
+    private final ConcurrentMap<String, LocalLock> localLocks = new ConcurrentHashMap<>(256);
+
+    public CoalescingLockManager(LockManager delegate) {
+        this.delegate = delegate;
+    }
+
+    public LockManager getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        long start = System.currentTimeMillis();
+        LocalLock localLock = retain(key);
+        boolean locallyLocked = false;
+        try {
+            locallyLocked = localLock.tryAcquireNanos(1, TimeUnit.MILLISECONDS.toNanos(maxWaitMillSeconds));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locallyLocked) {
+            unretain(key, localLock);
+            return null;
+        }
+        String token = null;
+        try {
+            long remaining = Math.max(0, maxWaitMillSeconds - (System.currentTimeMillis() - start));
+            token = delegate.lock(key, remaining, leaseMillSeconds);
+            return token;
+        } finally {
+            if (token == null) {
+                localLock.release(1);
+                unretain(key, localLock);
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key, String token) {
+        LocalLock localLock = localLocks.get(key);
+        try {
+            delegate.remove(key, token);
+        } finally {
+            if (localLock != null) {
+                localLock.release(1);
+                unretain(key, localLock);
+            }
+        }
+    }
+
+    private LocalLock retain(String key) {
+        while (true) {
+            LocalLock localLock = localLocks.get(key);
+            if (localLock == null) {
+                LocalLock created = new LocalLock();
+                localLock = localLocks.putIfAbsent(key, created);
+                if (localLock == null) {
+                    localLock = created;
+                }
+            }
+            if (localLock.retain()) {
+                return localLock;
+            }
+            // the lock is being discarded by its last user, try again with a fresh one
+            localLocks.remove(key, localLock);
+        }
+    }
+
+    private void unretain(String key, LocalLock localLock) {
+        if (localLock.unretain()) {
+            localLocks.remove(key, localLock);
+        }
+    }
+
+    /**
+     * Fair, non-reentrant local lock of one key. Reentrancy is handled by the lock aspect.
+     * Referenced by the threads holding or waiting for it, and discarded by the last one.
+     */
+    @SuppressWarnings("serial")
+    private static final class LocalLock extends AbstractQueuedSynchronizer {
+
+        private final AtomicInteger references = new AtomicInteger();
+
+        boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean unretain() {
+            return references.decrementAndGet() == 0 && references.compareAndSet(0, -1);
+        }
+
+        @Override
+        protected boolean tryAcquire(int arg) {
+            return !hasQueuedPredecessors() && compareAndSetState(0, 1);
+        }
+
+        @Override
+        protected boolean tryRelease(int arg) {
+            setState(0);
+            return true;
+        }
+    }
+}
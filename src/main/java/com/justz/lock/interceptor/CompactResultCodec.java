@@ -0,0 +1,366 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.ResultCodec;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * {@link ResultCodec} writing the usual result types in a compact binary form: a tag byte
+ * followed by the value, with integers as variable length numbers and strings in UTF-8.
+ * <p>Encodes natively strings, primitive wrappers, {@code byte[]}, {@link BigDecimal},
+ * {@link BigInteger}, {@link Date}, enums, and {@link ArrayList}, {@link HashSet},
+ * {@link LinkedHashSet}, {@link HashMap} and {@link LinkedHashMap} of such values, which are
+ * decoded to the same types. Any other value, including other collection types which could
+ * not be decoded to their type, is encoded by the fallback codec if one is set, e.g. a codec
+ * based on a serialization library for the objects of the application. Without it they are
+ * rejected, so such results are not published: no class is instantiated from the stored bytes
+ * but the enum types.
+ */
+public class CompactResultCodec implements ResultCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte CHARACTER = 5;
+    private static final byte INTEGER = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTES = 11;
+    private static final byte BIG_INTEGER = 12;
+    private static final byte BIG_DECIMAL = 13;
+    private static final byte DATE = 14;
+    private static final byte ENUM = 15;
+    private static final byte ARRAY_LIST = 16;
+    private static final byte HASH_SET = 17;
+    private static final byte LINKED_HASH_SET = 18;
+    private static final byte HASH_MAP = 19;
+    private static final byte LINKED_HASH_MAP = 20;
+    private static final byte FALLBACK = 21;
+
+    private ResultCodec fallbackCodec;
+
+    private ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+    /**
+     * Set the codec of the values which are not encoded natively. There is none by default.
+     * A {@link JdkResultCodec} decodes any serializable class found on the classpath, it should
+     * only be set if no one but the application can write to the result store.
+     */
+    public void setFallbackCodec(ResultCodec fallbackCodec) {
+        Assert.notNull(fallbackCodec, "fallbackCodec must not be null");
+        this.fallbackCodec = fallbackCodec;
+    }
+
+    /**
+     * Set the class loader resolving the enum types. The default is the default class loader.
+     */
+    public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Output output = new Output();
+        write(output, value);
+        return output.toByteArray();
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        Input input = new Input(bytes);
+        Object value = read(input);
+        if (input.position != bytes.length) {
+            throw new IllegalArgumentException("unexpected bytes after the encoded value");
+        }
+        return value;
+    }
+
+    private void write(Output output, Object value) {
+        if (value == null) {
+            output.write(NULL);
+            return;
+        }
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            output.write(STRING);
+            output.writeBlock(((String) value).getBytes(UTF_8));
+        } else if (type == Boolean.class) {
+            output.write((Boolean) value ? TRUE : FALSE);
+        } else if (type == Integer.class) {
+            output.write(INTEGER);
+            output.writeVarLong((Integer) value);
+        } else if (type == Long.class) {
+            output.write(LONG);
+            output.writeVarLong((Long) value);
+        } else if (type == Double.class) {
+            output.write(DOUBLE);
+            output.writeFixed(Double.doubleToLongBits((Double) value), 8);
+        } else if (type == Float.class) {
+            output.write(FLOAT);
+            output.writeFixed(Float.floatToIntBits((Float) value), 4);
+        } else if (type == Short.class) {
+            output.write(SHORT);
+            output.writeVarLong((Short) value);
+        } else if (type == Byte.class) {
+            output.write(BYTE);
+            output.write((Byte) value);
+        } else if (type == Character.class) {
+            output.write(CHARACTER);
+            output.writeVarLong((Character) value);
+        } else if (type == byte[].class) {
+            output.write(BYTES);
+            output.writeBlock((byte[]) value);
+        } else if (type == BigInteger.class) {
+            output.write(BIG_INTEGER);
+            output.writeBlock(((BigInteger) value).toByteArray());
+        } else if (type == BigDecimal.class) {
+            output.write(BIG_DECIMAL);
+            output.writeVarLong(((BigDecimal) value).scale());
+            output.writeBlock(((BigDecimal) value).unscaledValue().toByteArray());
+        } else if (type == Date.class) {
+            output.write(DATE);
+            output.writeVarLong(((Date) value).getTime());
+        } else if (value instanceof Enum) {
+            output.write(ENUM);
+            output.writeBlock(((Enum<?>) value).getDeclaringClass().getName().getBytes(UTF_8));
+            output.writeBlock(((Enum<?>) value).name().getBytes(UTF_8));
+        } else if (type == ArrayList.class) {
+            writeCollection(output, ARRAY_LIST, (Collection<?>) value);
+        } else if (type == HashSet.class) {
+            writeCollection(output, HASH_SET, (Collection<?>) value);
+        } else if (type == LinkedHashSet.class) {
+            writeCollection(output, LINKED_HASH_SET, (Collection<?>) value);
+        } else if (type == HashMap.class) {
+            writeMap(output, HASH_MAP, (Map<?, ?>) value);
+        } else if (type == LinkedHashMap.class) {
+            writeMap(output, LINKED_HASH_MAP, (Map<?, ?>) value);
+        } else if (fallbackCodec != null) {
+            output.write(FALLBACK);
+            output.writeBlock(fallbackCodec.encode(value));
+        } else {
+            throw new IllegalArgumentException("type not supported without a fallback codec: " + type.getName());
+        }
+    }
+
+    private void writeCollection(Output output, byte tag, Collection<?> collection) {
+        output.write(tag);
+        output.writeVarLong(collection.size());
+        for (Object element : collection) {
+            write(output, element);
+        }
+    }
+
+    private void writeMap(Output output, byte tag, Map<?, ?> map) {
+        output.write(tag);
+        output.writeVarLong(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            write(output, entry.getKey());
+            write(output, entry.getValue());
+        }
+    }
+
+    private Object read(Input input) {
+        byte tag = input.read();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return input.read();
+            case SHORT:
+                return (short) input.readVarLong();
+            case CHARACTER:
+                return (char) input.readVarLong();
+            case INTEGER:
+                return (int) input.readVarLong();
+            case LONG:
+                return input.readVarLong();
+            case FLOAT:
+                return Float.intBitsToFloat((int) input.readFixed(4));
+            case DOUBLE:
+                return Double.longBitsToDouble(input.readFixed(8));
+            case STRING:
+                return new String(input.readBlock(), UTF_8);
+            case BYTES:
+                return input.readBlock();
+            case BIG_INTEGER:
+                return new BigInteger(input.readBlock());
+            case BIG_DECIMAL:
+                int scale = (int) input.readVarLong();
+                return new BigDecimal(new BigInteger(input.readBlock()), scale);
+            case DATE:
+                return new Date(input.readVarLong());
+            case ENUM:
+                return readEnum(input);
+            case ARRAY_LIST:
+                int size = input.readSize();
+                return readElements(input, new ArrayList<Object>(size), size);
+            case HASH_SET:
+                size = input.readSize();
+                return readElements(input, new HashSet<Object>(capacity(size)), size);
+            case LINKED_HASH_SET:
+                size = input.readSize();
+                return readElements(input, new LinkedHashSet<Object>(capacity(size)), size);
+            case HASH_MAP:
+                size = input.readSize();
+                return readEntries(input, new HashMap<Object, Object>(capacity(size)), size);
+            case LINKED_HASH_MAP:
+                size = input.readSize();
+                return readEntries(input, new LinkedHashMap<Object, Object>(capacity(size)), size);
+            case FALLBACK:
+                if (fallbackCodec == null) {
+                    throw new IllegalArgumentException("value encoded by a fallback codec, none is set");
+                }
+                return fallbackCodec.decode(input.readBlock());
+            default:
+                throw new IllegalArgumentException("unknown tag: " + tag);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readEnum(Input input) {
+        String className = new String(input.readBlock(), UTF_8);
+        String name = new String(input.readBlock(), UTF_8);
+        try {
+            return Enum.valueOf((Class) ClassUtils.forName(className, classLoader), name);
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalArgumentException("unknown enum type: " + className, ex);
+        }
+    }
+
+    private Collection<Object> readElements(Input input, Collection<Object> collection, int size) {
+        for (int i = 0; i < size; i++) {
+            collection.add(read(input));
+        }
+        return collection;
+    }
+
+    private Map<Object, Object> readEntries(Input input, Map<Object, Object> map, int size) {
+        for (int i = 0; i < size; i++) {
+            Object key = read(input);
+            map.put(key, read(input));
+        }
+        return map;
+    }
+
+    private static int capacity(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f) + 1;
+    }
+
+
+    private static final class Output extends ByteArrayOutputStream {
+
+        private Output() {
+            super(64);
+        }
+
+        /**
+         * Write a zigzag encoded variable length number, 1 byte up to 63.
+         */
+        private void writeVarLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7fL) != 0) {
+                write((int) (zigzag & 0x7f) | 0x80);
+                zigzag >>>= 7;
+            }
+            write((int) zigzag);
+        }
+
+        private void writeFixed(long value, int length) {
+            for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        /**
+         * Write the given bytes preceded by their length.
+         */
+        private void writeBlock(byte[] bytes) {
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+
+    private static final class Input {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        private Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private byte read() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("truncated encoded value");
+            }
+            return bytes[position++];
+        }
+
+        private long readVarLong() {
+            long zigzag = 0;
+            for (int shift = 0; ; shift += 7) {
+                if (shift > 63) {
+                    throw new IllegalArgumentException("malformed variable length number");
+                }
+                byte b = read();
+                zigzag |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        private long readFixed(int length) {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | (read() & 0xff);
+            }
+            return value;
+        }
+
+        /**
+         * Read a length, checked against the remaining bytes since each element takes at least one.
+         */
+        private int readSize() {
+            long size = readVarLong();
+            if (size < 0 || size > bytes.length - position) {
+                throw new IllegalArgumentException("malformed length: " + size);
+            }
+            return (int) size;
+        }
+
+        private byte[] readBlock() {
+            int length = readSize();
+            byte[] value = new byte[length];
+            System.arraycopy(bytes, position, value, 0, length);
+            position += length;
+            return value;
+        }
+    }
+}
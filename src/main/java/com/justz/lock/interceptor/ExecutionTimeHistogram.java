@@ -0,0 +1,77 @@
+package com.justz.lock.interceptor;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of execution times in milliseconds. The buckets grow exponentially,
+ * four per power of two, so a percentile is known within 25% with a few hundred counters.
+ * <p>Recording is a single atomic increment. Old samples are halved away once the histogram
+ * holds {@link #WINDOW} samples, so it follows changes of the execution times.
+ */
+final class ExecutionTimeHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // up to 2^40 milliseconds, longer times are counted in the last bucket
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private static final long WINDOW = 8192;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long millSeconds) {
+        counts.incrementAndGet(index(Math.max(0, millSeconds)));
+    }
+
+    /**
+     * Return an upper bound of the given percentile, e.g. 0.999, or -1 if the histogram holds
+     * less than the given number of samples. Halves the counts if the window is full.
+     */
+    long percentile(double percentile, long minSamples) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total < minSamples || total == 0) {
+            return -1;
+        }
+        if (total >= WINDOW) {
+            for (int i = 0; i < BUCKETS; i++) {
+                if (snapshot[i] > 0) {
+                    counts.addAndGet(i, -(snapshot[i] / 2));
+                }
+            }
+        }
+        long target = (long) Math.ceil(total * percentile);
+        long cumulated = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulated += snapshot[i];
+            if (cumulated >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
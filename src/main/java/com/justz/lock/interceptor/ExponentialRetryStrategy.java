@@ -0,0 +1,42 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.RetryStrategy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link RetryStrategy} backing off exponentially with decorrelated jitter: each delay is
+ * picked at random between the base delay and three times the previous one, up to a cap.
+ * <p>The first retries come quickly, which suits short critical sections, and the randomness
+ * spreads the retries of waiters blocked at the same time instead of keeping them in step.
+ */
+public class ExponentialRetryStrategy implements RetryStrategy {
+
+    private final long baseMillSeconds;
+
+    private final long capMillSeconds;
+
+    public ExponentialRetryStrategy(long baseMillSeconds, long capMillSeconds) {
+        if (baseMillSeconds <= 0 || capMillSeconds < baseMillSeconds) {
+            throw new IllegalArgumentException("base must be positive and not greater than cap");
+        }
+        this.baseMillSeconds = baseMillSeconds;
+        this.capMillSeconds = capMillSeconds;
+    }
+
+    @Override
+    public long nextDelay(String key, int failedAttempts, long previousDelayMillSeconds) {
+        long upper = Math.max(baseMillSeconds, previousDelayMillSeconds) * 3;
+        long delay = baseMillSeconds + ThreadLocalRandom.current().nextLong(upper - baseMillSeconds + 1);
+        return Math.min(capMillSeconds, delay);
+    }
+
+    @Override
+    public boolean needsHoldTimes() {
+        return false;
+    }
+
+    @Override
+    public void released(String key, long holdMillSeconds) {
+    }
+}
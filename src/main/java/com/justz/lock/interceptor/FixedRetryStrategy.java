@@ -0,0 +1,29 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.RetryStrategy;
+
+/**
+ * {@link RetryStrategy} retrying at a fixed interval.
+ */
+public class FixedRetryStrategy implements RetryStrategy {
+
+    private final long intervalMillSeconds;
+
+    public FixedRetryStrategy(long intervalMillSeconds) {
+        this.intervalMillSeconds = intervalMillSeconds;
+    }
+
+    @Override
+    public long nextDelay(String key, int failedAttempts, long previousDelayMillSeconds) {
+        return intervalMillSeconds;
+    }
+
+    @Override
+    public boolean needsHoldTimes() {
+        return false;
+    }
+
+    @Override
+    public void released(String key, long holdMillSeconds) {
+    }
+}
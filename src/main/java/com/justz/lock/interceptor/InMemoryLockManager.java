@@ -0,0 +1,557 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.AsyncLockManager;
+import com.justz.lock.FencingLockManager;
+import com.justz.lock.LockManager;
+import com.justz.lock.MultiLockManager;
+import com.justz.lock.ReadWriteLockManager;
+import com.justz.lock.RetryStrategy;
+import com.justz.lock.RetryableLockManager;
+import com.justz.lock.SemaphoreLockManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.SettableListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock manager keeping the locks in this JVM, for single instance deployments and tests
+ * which have no Redis server. Only locks the keys among the threads of this JVM.
+ * <p>The locks are entries of a concurrent map, taken with {@code putIfAbsent} and expiring
+ * after their lease like the Redis keys of {@link SimpleLockManager}. An expired entry is
+ * replaced by the next acquire, and removed by one reaper thread shared by all the keys.
+ * Waiters block on one of a fixed set of striped monitors, woken up by a release of a key
+ * of their stripe, at the expiry of the lease they wait for, or after the delay of the
+ * retry strategy.
+ * <p>Offers the same kinds of locks as {@link SimpleLockManager}: read/write locks, whose
+ * waiting writers do not hold back new readers, semaphores, fencing tokens, and non-blocking
+ * acquires, retried on the reaper thread.
+ */
+public class InMemoryLockManager implements MultiLockManager, ReadWriteLockManager, SemaphoreLockManager,
+        AsyncLockManager, FencingLockManager, RetryableLockManager, InitializingBean, DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(InMemoryLockManager.class);
+
+    // number of monitors the waiters are spread over, a power of two
+    private static final int STRIPES = 64;
+
+    // interval at which the reaper removes the expired locks, in milliseconds
+    private static final long REAP_INTERVAL_MILL_SECONDS = 1000;
+
+    // default interval between the attempts of an acquire not woken up by a release, in milliseconds
+    private static final long RETRY_INTERVAL_MILL_SECONDS = 100;
+
+    // holders of an exclusive or write lock, which does not share the key
+    private static final int EXCLUSIVE = 0;
+
+    // holders of a read lock, which shares the key with any number of readers
+    private static final int READERS = Integer.MAX_VALUE;
+
+    private final ConcurrentMap<String, Entry> locks;
+
+    private final Object[] stripes;
+
+    // number of threads waiting on each stripe, so that releases only notify when needed
+    private final AtomicIntegerArray waiters;
+
+    // also the fencing tokens, see lockFenced
+    private final AtomicLong tokenSequence;
+
+    // the fenced acquires draw their token and take the lock under this monitor
+    private final Object fenceMonitor;
+
+    // the manager this one was created from by withRetryStrategy, sharing its locks and reaper, or null
+    private final InMemoryLockManager parent;
+
+    private RetryStrategy retryStrategy = new FixedRetryStrategy(RETRY_INTERVAL_MILL_SECONDS);
+
+    // when the locks were acquired, if the retry strategy needs the hold times
+    private final ConcurrentMap<String, Long> holdStarts = new ConcurrentHashMap<>(256);
+
+    private ScheduledExecutorService reaper;
+
+    public InMemoryLockManager() {
+        this.locks = new ConcurrentHashMap<>(256);
+        this.stripes = new Object[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        this.waiters = new AtomicIntegerArray(STRIPES);
+        this.tokenSequence = new AtomicLong();
+        this.fenceMonitor = new Object();
+        this.parent = null;
+    }
+
+    private InMemoryLockManager(InMemoryLockManager parent, RetryStrategy retryStrategy) {
+        this.locks = parent.locks;
+        this.stripes = parent.stripes;
+        this.waiters = parent.waiters;
+        this.tokenSequence = parent.tokenSequence;
+        this.fenceMonitor = parent.fenceMonitor;
+        this.parent = parent;
+        this.retryStrategy = retryStrategy;
+    }
+
+    /**
+     * Set the strategy deciding how long a contended acquire waits at most before its next
+     * attempt, when no release of the key woke it up earlier. The default retries every 100
+     * milliseconds.
+     */
+    public void setRetryStrategy(RetryStrategy retryStrategy) {
+        this.retryStrategy = retryStrategy;
+    }
+
+    /**
+     * Return a view of this initialized manager using the given retry strategy, see
+     * {@link #setRetryStrategy}.
+     */
+    @Override
+    public LockManager withRetryStrategy(RetryStrategy retryStrategy) {
+        return new InMemoryLockManager(this, retryStrategy);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("in-memory-lock-reaper-");
+        threadFactory.setDaemon(true);
+        reaper = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        reaper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                reap();
+            }
+        }, REAP_INTERVAL_MILL_SECONDS, REAP_INTERVAL_MILL_SECONDS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (reaper != null) {
+            reaper.shutdownNow();
+        }
+    }
+
+    @Override
+    public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return acquire(Collections.singletonList(key), EXCLUSIVE, false, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void remove(String key, String token) {
+        if (!release(key, token)) {
+            logger.warn("lock already expired or owned by others when released, lockKey: {}", key);
+        }
+    }
+
+    /**
+     * Lock all the given keys or none of them. The keys are locked in their natural order.
+     */
+    @Override
+    public String lock(Collection<String> keys, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return acquire(new ArrayList<>(new TreeSet<>(keys)), EXCLUSIVE, false, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void remove(Collection<String> keys, String token) {
+        boolean released = true;
+        // distinct like the locked keys
+        for (String key : new TreeSet<>(keys)) {
+            released &= release(key, token);
+        }
+        if (!released) {
+            logger.warn("locks already expired or owned by others when released, lockKeys: {}", keys);
+        }
+    }
+
+    @Override
+    public String lockRead(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return acquire(Collections.singletonList(key), READERS, false, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public String lockWrite(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return acquire(Collections.singletonList(key), EXCLUSIVE, false, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void removeRead(String key, String token) {
+        remove(key, token);
+    }
+
+    @Override
+    public void removeWrite(String key, String token) {
+        remove(key, token);
+    }
+
+    @Override
+    public String lockPermit(String key, int permits, long maxWaitMillSeconds, long leaseMillSeconds) {
+        if (permits < 1) {
+            throw new IllegalArgumentException("permits must be positive: " + permits);
+        }
+        return acquire(Collections.singletonList(key), permits, false, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void removePermit(String key, String token) {
+        remove(key, token);
+    }
+
+    /**
+     * Acquire the exclusive lock with an owner token drawn from a sequence when the key is
+     * taken, which is also the fencing token: the token and the lock of each attempt are taken
+     * together under one monitor, so a later holder of the key always has a larger one.
+     */
+    @Override
+    public String lockFenced(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return acquire(Collections.singletonList(key), EXCLUSIVE, true, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public long getFencingToken(String token) {
+        try {
+            return Long.parseLong(token);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("not a lock token of this manager: " + token);
+        }
+    }
+
+    /**
+     * Try to acquire the lock right away, and if it is held by others, retry on the reaper
+     * thread at the release or expiry of the lock, or after the delay of the retry strategy.
+     */
+    @Override
+    public ListenableFuture<String> lockAsync(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        SettableListenableFuture<String> result = new SettableListenableFuture<>();
+        new AsyncAcquisition(key, maxWaitMillSeconds, leaseMillSeconds, result).run();
+        return result;
+    }
+
+    /**
+     * Release the lock right away, it does not block.
+     */
+    @Override
+    public ListenableFuture<Void> removeAsync(String key, String token) {
+        remove(key, token);
+        SettableListenableFuture<Void> result = new SettableListenableFuture<>();
+        result.set(null);
+        return result;
+    }
+
+    /**
+     * Acquire the given keys, all with the given holders.
+     * @param holders {@link #EXCLUSIVE}, {@link #READERS} or the permits of a semaphore
+     * @param fenced whether each attempt draws a new token under the fence monitor
+     */
+    private String acquire(List<String> keys, int holders, boolean fenced, long maxWaitMillSeconds,
+                           long leaseMillSeconds) {
+        String token = fenced ? null : nextToken();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillSeconds);
+        int failedAttempts = 0;
+        long delay = 0;
+        while (true) {
+            String blockingKey;
+            if (fenced) {
+                synchronized (fenceMonitor) {
+                    token = nextToken();
+                    blockingKey = tryAcquire(keys, token, holders, leaseMillSeconds);
+                }
+            } else {
+                blockingKey = tryAcquire(keys, token, holders, leaseMillSeconds);
+            }
+            if (blockingKey == null) {
+                track(keys, token);
+                return token;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return null;
+            }
+            delay = retryStrategy.nextDelay(blockingKey, ++failedAttempts, delay);
+            if (!awaitRelease(blockingKey, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(delay)))) {
+                return null;
+            }
+        }
+    }
+
+    private String nextToken() {
+        return Long.toString(tokenSequence.incrementAndGet());
+    }
+
+    /**
+     * Try to enter all the keys with the given token, taking over expired holders.
+     * @return {@code null} if all the keys were locked, otherwise the key held by others,
+     * after the keys already locked were rolled back
+     */
+    private String tryAcquire(List<String> keys, String token, int holders, long leaseMillSeconds) {
+        long now = System.nanoTime();
+        long expireAt = now + TimeUnit.MILLISECONDS.toNanos(leaseMillSeconds);
+        for (int i = 0; i < keys.size(); i++) {
+            if (tryEnter(keys.get(i), token, expireAt, holders, now)) {
+                continue;
+            }
+            for (int j = 0; j < i; j++) {
+                release(keys.get(j), token);
+            }
+            return keys.get(i);
+        }
+        return null;
+    }
+
+    private boolean tryEnter(String key, String token, long expireAt, int holders, long now) {
+        while (true) {
+            Entry existing = locks.get(key);
+            Entry live = existing != null ? existing.withoutExpired(now) : null;
+            Entry entered;
+            if (live == null) {
+                entered = new Entry(holders != EXCLUSIVE, Collections.singletonMap(token, expireAt));
+            } else if (holders != EXCLUSIVE && live.shared && live.holders.size() < holders) {
+                entered = live.with(token, expireAt);
+            } else {
+                return false;
+            }
+            if (existing == null ? locks.putIfAbsent(key, entered) == null : locks.replace(key, existing, entered)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean release(String key, String token) {
+        untrack(key, token);
+        while (true) {
+            long now = System.nanoTime();
+            Entry existing = locks.get(key);
+            Long expireAt = existing != null ? existing.holders.get(token) : null;
+            if (expireAt == null || expireAt - now <= 0) {
+                return false;
+            }
+            Entry left = existing.withoutExpired(now).without(token);
+            if (left == null ? locks.remove(key, existing) : locks.replace(key, existing, left)) {
+                signal(key);
+                return true;
+            }
+        }
+    }
+
+    private void track(List<String> keys, String token) {
+        if (retryStrategy.needsHoldTimes()) {
+            long now = System.currentTimeMillis();
+            for (String key : keys) {
+                holdStarts.put(token + ' ' + key, now);
+            }
+        }
+    }
+
+    private void untrack(String key, String token) {
+        if (retryStrategy.needsHoldTimes()) {
+            Long holdStart = holdStarts.remove(token + ' ' + key);
+            if (holdStart != null) {
+                retryStrategy.released(key, System.currentTimeMillis() - holdStart);
+            }
+        }
+    }
+
+    /**
+     * Wait until the given key may be free: released, expired or the given time elapsed.
+     * @return {@code false} if interrupted
+     */
+    private boolean awaitRelease(String key, long maxWaitNanos) {
+        int stripe = stripe(key);
+        waiters.incrementAndGet(stripe);
+        try {
+            synchronized (stripes[stripe]) {
+                // checked under the monitor, a release notifies after removing the entry
+                Entry entry = locks.get(key);
+                if (entry == null) {
+                    return true;
+                }
+                long waitNanos = Math.min(maxWaitNanos, entry.nextExpiry() - System.nanoTime());
+                if (waitNanos > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(stripes[stripe], waitNanos);
+                }
+            }
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiters.decrementAndGet(stripe);
+        }
+    }
+
+    private void signal(String key) {
+        int stripe = stripe(key);
+        if (waiters.get(stripe) > 0) {
+            synchronized (stripes[stripe]) {
+                stripes[stripe].notifyAll();
+            }
+        }
+    }
+
+    private int stripe(String key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    private ScheduledExecutorService getReaper() {
+        return parent != null ? parent.reaper : reaper;
+    }
+
+    private void reap() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Entry> lock : locks.entrySet()) {
+            Entry live = lock.getValue().withoutExpired(now);
+            if (live == lock.getValue()) {
+                continue;
+            }
+            if (live == null ? locks.remove(lock.getKey(), lock.getValue())
+                    : locks.replace(lock.getKey(), lock.getValue(), live)) {
+                signal(lock.getKey());
+            }
+        }
+    }
+
+    /**
+     * Exclusive acquire of one key retried on the reaper thread, without parking a thread.
+     */
+    private final class AsyncAcquisition implements Runnable {
+
+        private final String key;
+
+        private final String token = nextToken();
+
+        private final long deadline;
+
+        private final long leaseMillSeconds;
+
+        private final SettableListenableFuture<String> result;
+
+        private int failedAttempts;
+
+        private long delay;
+
+        private AsyncAcquisition(String key, long maxWaitMillSeconds, long leaseMillSeconds,
+                                 SettableListenableFuture<String> result) {
+            this.key = key;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillSeconds);
+            this.leaseMillSeconds = leaseMillSeconds;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            if (result.isCancelled()) {
+                return;
+            }
+            if (tryAcquire(Collections.singletonList(key), token, EXCLUSIVE, leaseMillSeconds) == null) {
+                track(Collections.singletonList(key), token);
+                // the caller cancelled in the meantime
+                if (!result.set(token)) {
+                    remove(key, token);
+                }
+                return;
+            }
+            long now = System.nanoTime();
+            long remaining = deadline - now;
+            if (remaining <= 0) {
+                result.set(null);
+                return;
+            }
+            delay = retryStrategy.nextDelay(key, ++failedAttempts, delay);
+            long waitNanos = Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(delay));
+            Entry entry = locks.get(key);
+            if (entry != null) {
+                waitNanos = Math.max(0, Math.min(waitNanos, entry.nextExpiry() - now));
+            }
+            try {
+                getReaper().schedule(this, waitNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException ex) {
+                result.setException(ex);
+            }
+        }
+    }
+
+    /**
+     * The holders of a key, replaced as a whole when they change.
+     */
+    private static final class Entry {
+
+        // whether the holders share the key, as readers or permit holders
+        private final boolean shared;
+
+        // the owner tokens of the holders, with the System.nanoTime() at which their lease expires
+        private final Map<String, Long> holders;
+
+        private Entry(boolean shared, Map<String, Long> holders) {
+            this.shared = shared;
+            this.holders = holders;
+        }
+
+        private Entry with(String token, long expireAt) {
+            Map<String, Long> entered = new HashMap<>(holders);
+            entered.put(token, expireAt);
+            return new Entry(shared, entered);
+        }
+
+        /**
+         * @return the entry without the given holder, or {@code null} if it was the last one
+         */
+        private Entry without(String token) {
+            if (holders.size() == 1) {
+                return holders.containsKey(token) ? null : this;
+            }
+            Map<String, Long> left = new HashMap<>(holders);
+            left.remove(token);
+            return new Entry(shared, left);
+        }
+
+        /**
+         * @return this entry if no lease expired, otherwise the entry of the live holders,
+         * or {@code null} if there is none
+         */
+        private Entry withoutExpired(long now) {
+            Map<String, Long> live = null;
+            for (Map.Entry<String, Long> holder : holders.entrySet()) {
+                if (holder.getValue() - now <= 0) {
+                    if (live == null) {
+                        live = new HashMap<>(holders);
+                    }
+                    live.remove(holder.getKey());
+                }
+            }
+            if (live == null) {
+                return this;
+            }
+            return live.isEmpty() ? null : new Entry(shared, live);
+        }
+
+        // System.nanoTime() at which the first lease expires
+        private long nextExpiry() {
+            long nextExpiry = Long.MAX_VALUE;
+            boolean first = true;
+            for (long expireAt : holders.values()) {
+                if (first || expireAt - nextExpiry < 0) {
+                    nextExpiry = expireAt;
+                    first = false;
+                }
+            }
+            return nextExpiry;
+        }
+    }
+}
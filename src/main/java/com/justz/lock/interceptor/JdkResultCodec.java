@@ -0,0 +1,22 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.ResultCodec;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * {@link ResultCodec} using Java serialization, for results implementing {@link java.io.Serializable}.
+ * <p>Decoding instantiates any serializable class named in the bytes, so only use it with a
+ * result store no one but the application can write to.
+ */
+public class JdkResultCodec implements ResultCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return SerializationUtils.serialize(value);
+    }
+
+    @Override
+    public Object decode(byte[] bytes) {
+        return SerializationUtils.deserialize(bytes);
+    }
+}
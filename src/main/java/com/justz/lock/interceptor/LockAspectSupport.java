@@ -1,104 +1,861 @@
 package com.justz.lock.interceptor;
 
+import com.justz.lock.AsyncLockManager;
+import com.justz.lock.FencingLockManager;
 import com.justz.lock.LockManager;
+import com.justz.lock.LockResultStore;
+import com.justz.lock.MultiLockManager;
+import com.justz.lock.ReadWriteLockManager;
+import com.justz.lock.ResultCodec;
+import com.justz.lock.RetryStrategy;
+import com.justz.lock.RetryableLockManager;
+import com.justz.lock.SemaphoreLockManager;
+import com.justz.lock.annotation.LockToken;
 import com.justz.lock.enumeration.ActionType;
+import com.justz.lock.enumeration.LockMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.beans.factory.annotation.BeanFactoryAnnotationUtils;
-import org.springframework.context.expression.AnnotatedElementKey;
+import org.springframework.core.MethodClassKey;
+import org.springframework.core.NamedThreadLocal;
+import org.springframework.expression.Expression;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import static com.justz.lock.config.LockManagementConfigUtils.SIMPLE_LOCK_MANAGER_BEAN_NAME;
 
 /**
  * Base class for lock aspects, such as the {@link LockInterceptor}
  */
-public abstract class LockAspectSupport implements BeanFactoryAware, InitializingBean {
+public abstract class LockAspectSupport implements BeanFactoryAware, BeanClassLoaderAware, InitializingBean,
+        DisposableBean {
+
+    // interval between the attempts to lock for a method returning a future, in milliseconds
+    private static final int ASYNC_RETRY_INTERVAL = 50;
+
+    // lease of the operations without a fixed lease when the lease is not adaptive, in milliseconds
+    private static final long DEFAULT_LEASE_MILL_SECONDS = 60000;
+
+    // an adaptive lease is resized after about one in this many executions
+    private static final int LEASE_RESIZE_INTERVAL = 64;
+
+    // stored value of a null result
+    private static final byte[] NULL_RESULT = new byte[0];
+
+    // returned when no result was published for a key
+    private static final Object NO_RESULT = new Object();
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * Locks held by the current thread, keyed by lock key. A nested invocation on a held key
+     * re-enters the lock without going back to the lock manager.
+     */
+    private static final ThreadLocal<Map<String, HeldLock>> heldLocks =
+            new NamedThreadLocal<Map<String, HeldLock>>("Held locks") {
+                @Override
+                protected Map<String, HeldLock> initialValue() {
+                    return new HashMap<>(4);
+                }
+            };
 
     private KeyGenerator keyGenerator = new SimpleKeyGenerator();
 
     private LockManager lockManager = null;
 
-    private final Map<LockConfigCacheKey, LockConfigMetadata> metadataCache =
+    /**
+     * Canonical value held in cache to indicate no lock operation was
+     * found for this method and we don't need to look again.
+     */
+    private static final LockConfigMetadata NO_LOCK_METADATA = new LockConfigMetadata();
+
+    private final ConcurrentMap<MethodClassKey, LockConfigMetadata> metadataCache =
             new ConcurrentHashMap<>(1024);
 
+    private LockOperationExpressionEvaluator evaluator =
+            new LockOperationExpressionEvaluator(ClassUtils.getDefaultClassLoader());
+
+    private boolean localCoalescing;
+
+    private AdaptiveLeasePolicy adaptiveLeasePolicy;
+
+    // whether the optional beans below were looked up, on the creation of the first plan
+    private volatile boolean optionalBeansResolved;
+
+    // creates the metrics of the operations, or null if Micrometer or a meter registry is missing
+    private LockMetrics.Factory lockMetricsFactory;
+
+    // where the results of the operations are published, or null if not supported
+    private LockResultStore resultStore;
+
+    private ResultCodec resultCodec = new CompactResultCodec();
+
+    private final Map<LockManager, LockManager> coalescingLockManagers = new ConcurrentHashMap<>(4);
+
+    // lock managers using a retry strategy, keyed by the lock manager and the strategy
+    private final Map<List<Object>, LockManager> retryingLockManagers = new ConcurrentHashMap<>(4);
+
+    private volatile ScheduledExecutorService asyncScheduler;
+
+    // invokes the methods returning a future once their lock was acquired in the background
+    private Executor asyncExecutor;
+
+    private volatile ExecutorService defaultAsyncExecutor;
+
     private BeanFactory beanFactory;
 
     protected Object execute(LockOperationInvoker invoker, Object target, Method method, Object[] args) {
         Class<?> targetClass = getTargetClass(target);
-        Collection<LockOperationConfig> lockCfgs = getLockConfigSource().getLockConfig(method, targetClass);
-        if (CollectionUtils.isEmpty(lockCfgs)) {
+        LockConfigMetadata metadata = getLockConfigMetadata(method, targetClass);
+        if (metadata == null) {
             return invoker.invoke();
         }
-        return execute(invoker, lockCfgs, targetClass, method, args);
+        return execute(invoker, metadata, target, args);
+    }
+
+    private Object execute(LockOperationInvoker invoker, LockConfigMetadata metadata, Object target, Object[] args) {
+        if (metadata.multiKey) {
+            return executeMultiKey(invoker, metadata, args);
+        }
+        String key = generateLockKey(metadata, target, args);
+        LockManager lockManager = metadata.lockManager;
+        Map<String, HeldLock> currentHeldLocks = heldLocks.get();
+        HeldLock heldLock = currentHeldLocks.get(key);
+        if (heldLock != null && heldLock.lockManager == metadata.baseLockManager) {
+            heldLock.checkCovers(metadata.mode, key);
+            // the invocation which acquired the lock releases it
+            return invokeHolding(invoker, metadata, args, heldLock);
+        }
+        if (metadata.asyncReturnType != null) {
+            return executeAsync(invoker, metadata, args, Collections.singleton(key),
+                    singleKeyAcquisition(lockManager, metadata, key));
+        }
+        if (metadata.idempotent) {
+            Object published = getPublishedResult(key);
+            if (published != NO_RESULT) {
+                return published;
+            }
+        }
+        if (metadata.flights != null) {
+            return executeSingleFlight(invoker, metadata, key, args);
+        }
+        return executeLocked(invoker, metadata, key, args);
     }
 
-    private Object execute(LockOperationInvoker invoker, Collection<LockOperationConfig> lockCfgs,
-                           Class<?> targetClass, Method method, Object[] args) {
-        LockOperationConfig lockCfg = lockCfgs.iterator().next();
-        String key = generateLockKey(lockCfg, method, targetClass, args);
-        LockManager lockManager = getLockManager(lockCfg, method, targetClass);
-        boolean locked = false;
+    private Object executeLocked(LockOperationInvoker invoker, LockConfigMetadata metadata, String key, Object[] args) {
+        LockManager lockManager = metadata.lockManager;
+        Map<String, HeldLock> currentHeldLocks = heldLocks.get();
+        String token = null;
+        long lockedAt = 0;
         try {
-            locked = lockManager.lock(key, lockCfg.getMaxWaitMillSeconds());
-            if (locked) {
-                return invoker.invoke();
-            } else if (lockCfg.getActionAfterAcquireFailed() == ActionType.EXECUTE) {
+            long acquireStart = startAcquire(metadata);
+            token = lock(lockManager, metadata, key, metadata.maxWaitMillSeconds);
+            recordAcquire(metadata, acquireStart, token != null, true);
+            if (token != null) {
+                lockedAt = System.currentTimeMillis();
+                HeldLock acquired = newHeldLock(metadata, token);
+                currentHeldLocks.put(key, acquired);
+                if (metadata.resultTtlMillSeconds > 0) {
+                    return invokePublishing(invoker, metadata, key, args, acquired);
+                }
+                return invokeHolding(invoker, metadata, args, acquired);
+            }
+            if (metadata.idempotent) {
+                // the holder may have stored its result while this invocation waited
+                Object published = getPublishedResult(key);
+                if (published != NO_RESULT) {
+                    return published;
+                }
+            }
+            return handleAcquireFailed(invoker, metadata);
+        } finally {
+            if (token != null) {
+                // only the outermost invocation releases the lock
+                currentHeldLocks.remove(key);
+                recordExecutionTime(metadata, lockedAt);
+                remove(lockManager, metadata, key, token);
+            }
+        }
+    }
+
+    /**
+     * Execute as the leader of the flight of the given key, or, if another invocation of this
+     * JVM is already in flight, wait for it to land and share its outcome.
+     */
+    private Object executeSingleFlight(LockOperationInvoker invoker, LockConfigMetadata metadata, String key,
+                                       Object[] args) {
+        Flight flight = new Flight();
+        Flight inFlight = metadata.flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            try {
+                if (!inFlight.landed.await(metadata.maxWaitMillSeconds, TimeUnit.MILLISECONDS)) {
+                    return handleAcquireFailed(invoker, metadata);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return handleAcquireFailed(invoker, metadata);
+            }
+            return inFlight.outcome();
+        }
+        try {
+            Object result = executeLocked(invoker, metadata, key, args);
+            flight.result = result;
+            return result;
+        } catch (RuntimeException | Error ex) {
+            flight.failure = ex;
+            throw ex;
+        } finally {
+            // the invocations arriving from now on start a new flight
+            metadata.flights.remove(key, flight);
+            flight.landed.countDown();
+        }
+    }
+
+    /**
+     * Invoke the method holding the lock of the given key, unless a result was published
+     * for the key meanwhile, e.g. by the holder in another JVM this invocation waited for.
+     * The result of the invocation is then published for the next ones.
+     */
+    private Object invokePublishing(LockOperationInvoker invoker, LockConfigMetadata metadata, String key,
+                                    Object[] args, HeldLock heldLock) {
+        Object published = getPublishedResult(key);
+        if (published != NO_RESULT) {
+            return published;
+        }
+        Object result = invokeHolding(invoker, metadata, args, heldLock);
+        publishResult(metadata, key, result);
+        return result;
+    }
+
+    /**
+     * Return the result published for the given key, or {@link #NO_RESULT}. A result which can
+     * not be read is ignored, the method is then executed.
+     */
+    private Object getPublishedResult(String key) {
+        try {
+            byte[] bytes = this.resultStore.get(key);
+            if (bytes == null) {
+                return NO_RESULT;
+            }
+            return bytes.length == 0 ? null : this.resultCodec.decode(bytes);
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to read the published result of " + key, ex);
+            return NO_RESULT;
+        }
+    }
+
+    /**
+     * Publish the result of an execution, which has already succeeded: failing to publish it
+     * only costs the next invocations an execution.
+     */
+    private void publishResult(LockConfigMetadata metadata, String key, Object result) {
+        try {
+            byte[] bytes = result == null ? NULL_RESULT : this.resultCodec.encode(result);
+            this.resultStore.put(key, bytes, metadata.resultTtlMillSeconds);
+        } catch (RuntimeException ex) {
+            logger.warn("Failed to publish the result of " + key, ex);
+        }
+    }
+
+    private String lock(LockManager lockManager, LockConfigMetadata metadata, String key, long maxWaitMillSeconds) {
+        if (metadata.fencing) {
+            return ((FencingLockManager) lockManager).lockFenced(key, maxWaitMillSeconds, metadata.leaseMillSeconds);
+        }
+        if (metadata.permits > 1) {
+            return ((SemaphoreLockManager) lockManager).lockPermit(key, metadata.permits,
+                    maxWaitMillSeconds, metadata.leaseMillSeconds);
+        }
+        switch (metadata.mode) {
+            case READ:
+                return ((ReadWriteLockManager) lockManager).lockRead(key,
+                        maxWaitMillSeconds, metadata.leaseMillSeconds);
+            case WRITE:
+                return ((ReadWriteLockManager) lockManager).lockWrite(key,
+                        maxWaitMillSeconds, metadata.leaseMillSeconds);
+            default:
+                return lockManager.lock(key, maxWaitMillSeconds, metadata.leaseMillSeconds);
+        }
+    }
+
+    private void remove(LockManager lockManager, LockConfigMetadata metadata, String key, String token) {
+        if (metadata.permits > 1) {
+            ((SemaphoreLockManager) lockManager).removePermit(key, token);
+            return;
+        }
+        switch (metadata.mode) {
+            case READ:
+                ((ReadWriteLockManager) lockManager).removeRead(key, token);
+                break;
+            case WRITE:
+                ((ReadWriteLockManager) lockManager).removeWrite(key, token);
+                break;
+            default:
+                lockManager.remove(key, token);
+        }
+    }
+
+    /**
+     * Lock all the keys generated for the invocation at once. If the current thread already
+     * holds all of them, the invocation re-enters them; holding only some of them is an error.
+     */
+    private Object executeMultiKey(LockOperationInvoker invoker, LockConfigMetadata metadata, Object[] args) {
+        Collection<String> keys = ((MultiKeyGenerator) metadata.keyGenerator).generateKeys(
+                metadata.targetClass, metadata.method, metadata.prefix, args);
+        MultiLockManager lockManager = (MultiLockManager) metadata.lockManager;
+        Map<String, HeldLock> currentHeldLocks = heldLocks.get();
+        if (isHeldByCurrentThread(currentHeldLocks, keys, metadata.baseLockManager)) {
+            return invoker.invoke();
+        }
+        if (metadata.asyncReturnType != null) {
+            return executeAsync(invoker, metadata, args, keys, multiKeyAcquisition(lockManager, metadata, keys));
+        }
+        String token = null;
+        long lockedAt = 0;
+        try {
+            long acquireStart = startAcquire(metadata);
+            token = lockManager.lock(keys, metadata.maxWaitMillSeconds, metadata.leaseMillSeconds);
+            recordAcquire(metadata, acquireStart, token != null, true);
+            if (token != null) {
+                lockedAt = System.currentTimeMillis();
+                for (String key : keys) {
+                    currentHeldLocks.put(key, new HeldLock(metadata.baseLockManager, LockMode.EXCLUSIVE));
+                }
                 return invoker.invoke();
-            } else if (lockCfg.getActionAfterAcquireFailed() == ActionType.RETURN_NULL) {
-                return null;
+            }
+            return handleAcquireFailed(invoker, metadata);
+        } finally {
+            if (token != null) {
+                for (String key : keys) {
+                    currentHeldLocks.remove(key);
+                }
+                recordExecutionTime(metadata, lockedAt);
+                lockManager.remove(keys, token);
+            }
+        }
+    }
+
+    /**
+     * Lock for a method returning a future, holding the lock until the future completes.
+     * <p>With an {@link AsyncLockManager}, the lock is acquired on the timers of the lock manager.
+     * Otherwise it is tried once on the calling thread, without waiting, and if it is held by
+     * others further attempts are scheduled on a timer of this aspect. Either way the caller gets
+     * a pending future right away when the lock is not free, and the method is invoked on the
+     * {@link #setAsyncExecutor async executor} once the lock is acquired, so no thread is parked
+     * while waiting, and a slow method does not hold up the timers retrying other acquires.
+     */
+    private Object executeAsync(final LockOperationInvoker invoker, final LockConfigMetadata metadata,
+                                final Object[] args, final Collection<String> keys, final Acquisition acquisition) {
+        final long acquireStart = startAcquire(metadata);
+        if (!acquisition.isNonBlocking()) {
+            String token = acquisition.lock(0);
+            if (token != null) {
+                recordAcquire(metadata, acquireStart, true, false);
+                return invokeAsync(invoker, metadata, args, keys, acquisition, token);
+            }
+        }
+        final AsyncReturnType returnType = metadata.asyncReturnType;
+        final Object result = returnType.newResult();
+        acquisition.lockAsync(metadata.maxWaitMillSeconds).addCallback(new ListenableFutureCallback<String>() {
+            @Override
+            public void onSuccess(final String token) {
+                recordAcquire(metadata, acquireStart, token != null, false);
+                try {
+                    getAsyncExecutor().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            proceed(token);
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    if (token != null) {
+                        acquisition.removeAsync(token);
+                    }
+                    returnType.fail(result, ex);
+                }
+            }
+
+            private void proceed(String token) {
+                try {
+                    if (token != null) {
+                        relay(invokeAsync(invoker, metadata, args, keys, acquisition, token));
+                        return;
+                    }
+                    if (metadata.metrics != null) {
+                        metadata.metrics.acquireFailed();
+                    }
+                    if (metadata.actionAfterAcquireFailed == ActionType.EXECUTE) {
+                        relay(invoker.invoke());
+                    } else if (metadata.actionAfterAcquireFailed == ActionType.RETURN_NULL) {
+                        returnType.complete(result, null);
+                    } else {
+                        returnType.fail(result, new IllegalStateException("acquire lock failed"));
+                    }
+                } catch (LockOperationInvoker.ThrowableWrapper ex) {
+                    returnType.fail(result, ex.getOriginal());
+                } catch (RuntimeException ex) {
+                    returnType.fail(result, ex);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable ex) {
+                returnType.fail(result, ex);
+            }
+
+            private void relay(Object future) {
+                if (future != null) {
+                    returnType.relay(future, result);
+                } else {
+                    returnType.complete(result, null);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Invoke the method holding the acquired lock, and release the lock when the returned future
+     * completes, or right away if the method failed or returned no future.
+     */
+    private Object invokeAsync(LockOperationInvoker invoker, final LockConfigMetadata metadata, Object[] args,
+                               final Collection<String> keys, final Acquisition acquisition, final String token) {
+        final long lockedAt = System.currentTimeMillis();
+        Object future = null;
+        Map<String, HeldLock> currentHeldLocks = heldLocks.get();
+        HeldLock acquired = newHeldLock(metadata, token);
+        try {
+            // nested invocations before the method returns re-enter the lock
+            for (String key : keys) {
+                currentHeldLocks.put(key, acquired);
+            }
+            future = invokeHolding(invoker, metadata, args, acquired);
+            return future;
+        } finally {
+            for (String key : keys) {
+                currentHeldLocks.remove(key);
+            }
+            Runnable release = new Runnable() {
+                @Override
+                public void run() {
+                    recordExecutionTime(metadata, lockedAt);
+                    acquisition.removeAsync(token);
+                }
+            };
+            if (future != null) {
+                metadata.asyncReturnType.whenComplete(future, release);
             } else {
-                throw new IllegalStateException("acquire lock failed");
+                release.run();
+            }
+        }
+    }
+
+    private Acquisition singleKeyAcquisition(final LockManager lockManager, final LockConfigMetadata metadata,
+                                             final String key) {
+        if (lockManager instanceof AsyncLockManager && metadata.mode == LockMode.EXCLUSIVE && metadata.permits == 1 &&
+                !metadata.fencing) {
+            return new NonBlockingAcquisition((AsyncLockManager) lockManager, metadata, key);
+        }
+        return new Acquisition(key, metadata.retryStrategy) {
+            @Override
+            String lock(long maxWaitMillSeconds) {
+                return LockAspectSupport.this.lock(lockManager, metadata, key, maxWaitMillSeconds);
+            }
+
+            @Override
+            void remove(String token) {
+                LockAspectSupport.this.remove(lockManager, metadata, key, token);
+            }
+        };
+    }
+
+    private Acquisition multiKeyAcquisition(final MultiLockManager lockManager, final LockConfigMetadata metadata,
+                                            final Collection<String> keys) {
+        return new Acquisition(String.valueOf(keys), metadata.retryStrategy) {
+            @Override
+            String lock(long maxWaitMillSeconds) {
+                return lockManager.lock(keys, maxWaitMillSeconds, metadata.leaseMillSeconds);
+            }
+
+            @Override
+            void remove(String token) {
+                lockManager.remove(keys, token);
             }
+        };
+    }
+
+    private Executor getAsyncExecutor() {
+        if (this.asyncExecutor != null) {
+            return this.asyncExecutor;
+        }
+        ExecutorService executor = this.defaultAsyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.defaultAsyncExecutor;
+                if (executor == null) {
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-invoke-");
+                    threadFactory.setDaemon(true);
+                    executor = Executors.newCachedThreadPool(threadFactory);
+                    this.defaultAsyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ScheduledExecutorService getAsyncScheduler() {
+        ScheduledExecutorService scheduler = this.asyncScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = this.asyncScheduler;
+                if (scheduler == null) {
+                    CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-async-");
+                    threadFactory.setDaemon(true);
+                    scheduler = Executors.newScheduledThreadPool(
+                            Runtime.getRuntime().availableProcessors(), threadFactory);
+                    this.asyncScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Return the start of an acquire if the operation has metrics, without reading the clock otherwise.
+     */
+    private long startAcquire(LockConfigMetadata metadata) {
+        if (metadata.metrics == null) {
+            return 0;
+        }
+        AcquireRetries.reset();
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the latency of an acquire, and its retries if it was a blocking one and the
+     * lock manager reported them.
+     */
+    private void recordAcquire(LockConfigMetadata metadata, long acquireStart, boolean acquired, boolean blocking) {
+        LockMetrics metrics = metadata.metrics;
+        if (metrics == null) {
+            return;
+        }
+        long latency = System.nanoTime() - acquireStart;
+        if (acquired) {
+            metrics.acquired(latency);
+        } else {
+            metrics.timedOut(latency);
+        }
+        int retries = AcquireRetries.get();
+        if (blocking && retries >= 0) {
+            metrics.retries(retries);
+        }
+    }
+
+    /**
+     * Record how long the lock was held, in the metrics of the operation, and in its execution
+     * times if the lease is adaptive, resizing the lease from time to time.
+     */
+    private void recordExecutionTime(LockConfigMetadata metadata, long lockedAt) {
+        ExecutionTimeHistogram executionTimes = metadata.executionTimes;
+        if (executionTimes == null && metadata.metrics == null) {
+            return;
+        }
+        long holdMillSeconds = System.currentTimeMillis() - lockedAt;
+        if (metadata.metrics != null) {
+            metadata.metrics.held(holdMillSeconds);
+        }
+        if (executionTimes == null) {
+            return;
+        }
+        executionTimes.record(holdMillSeconds);
+        if (ThreadLocalRandom.current().nextInt(LEASE_RESIZE_INTERVAL) == 0) {
+            metadata.leaseMillSeconds = this.adaptiveLeasePolicy.leaseFor(executionTimes);
+        }
+    }
+
+    private HeldLock newHeldLock(LockConfigMetadata metadata, String token) {
+        HeldLock heldLock = new HeldLock(metadata.baseLockManager, metadata.mode);
+        if (metadata.fencing) {
+            heldLock.fencingToken = ((FencingLockManager) metadata.lockManager).getFencingToken(token);
+        }
+        return heldLock;
+    }
+
+    /**
+     * Invoke the method holding the given lock, exposing its fencing token if the operation
+     * uses one, to the {@link LockToken} parameter and through the {@link LockTokenHolder}.
+     */
+    private Object invokeHolding(LockOperationInvoker invoker, LockConfigMetadata metadata, Object[] args,
+                                 HeldLock heldLock) {
+        if (!metadata.fencing) {
+            return invoker.invoke();
+        }
+        if (heldLock.fencingToken == 0) {
+            throw new IllegalStateException("Lock re-entered by '" + metadata.method + "' was acquired " +
+                    "without a fencing token");
+        }
+        if (metadata.lockTokenIndex >= 0) {
+            args[metadata.lockTokenIndex] = heldLock.fencingToken;
+        }
+        long previous = LockTokenHolder.bind(heldLock.fencingToken);
+        try {
+            return invoker.invoke();
         } finally {
-            if (locked) {
-                lockManager.remove(key);
+            LockTokenHolder.restore(previous);
+        }
+    }
+
+    /**
+     * Return whether the current thread holds all the given keys in a mode covering an
+     * exclusive lock, so that the invocation can re-enter them.
+     * @throws IllegalStateException if it holds only some of them, or holds one in another mode:
+     * locking the keys would wait for its own locks until the max waiting time elapsed
+     * @see HeldLock#checkCovers
+     */
+    private boolean isHeldByCurrentThread(Map<String, HeldLock> currentHeldLocks, Collection<String> keys,
+                                          LockManager lockManager) {
+        int held = 0;
+        for (String key : keys) {
+            HeldLock heldLock = currentHeldLocks.get(key);
+            if (heldLock == null || heldLock.lockManager != lockManager) {
+                continue;
             }
+            heldLock.checkCovers(LockMode.EXCLUSIVE, key);
+            held++;
         }
+        if (held > 0 && held < keys.size()) {
+            throw new IllegalStateException("multi-key lock on keys the current thread partially holds is not " +
+                    "supported, it would wait for its own locks, lockKeys: " + keys);
+        }
+        return held > 0;
     }
 
-    private LockManager getLockManager(LockOperationConfig lockCfg, Method method, Class<?> targetClass) {
-        LockConfigMetadata metadata = getLockConfigMetadata(lockCfg, method, targetClass);
-        return metadata.lockManager;
+    private Object handleAcquireFailed(LockOperationInvoker invoker, LockConfigMetadata metadata) {
+        if (metadata.metrics != null) {
+            metadata.metrics.acquireFailed();
+        }
+        if (metadata.actionAfterAcquireFailed == ActionType.EXECUTE) {
+            return invoker.invoke();
+        } else if (metadata.actionAfterAcquireFailed == ActionType.RETURN_NULL) {
+            return null;
+        } else {
+            throw new IllegalStateException("acquire lock failed");
+        }
     }
 
-    private String generateLockKey(LockOperationConfig lockCfg, Method method, Class<?> targetClass, Object[] args) {
-        if (StringUtils.hasText(lockCfg.getKey())) {
-            return lockCfg.getKey();
+    private String generateLockKey(LockConfigMetadata metadata, Object target, Object[] args) {
+        if (metadata.key != null) {
+            return metadata.key;
+        }
+        if (metadata.keyExpression != null) {
+            return this.evaluator.evaluate(metadata.keyExpression, metadata.targetMethod, args, target,
+                    metadata.targetClass);
         }
-        LockConfigMetadata metadata = getLockConfigMetadata(lockCfg, method, targetClass);
-        return metadata.keyGenerator.generate(targetClass, method, lockCfg.getPrefix(), args);
+        return metadata.keyGenerator.generate(metadata.targetClass, metadata.method, metadata.prefix, args);
     }
 
-    protected LockConfigMetadata getLockConfigMetadata(LockOperationConfig lockCfg, Method method, Class<?> targetClass) {
-        LockConfigCacheKey cacheKey = new LockConfigCacheKey(lockCfg, method, targetClass);
+    /**
+     * Return the invocation plan of the given method on the given target class, built once
+     * with everything the interceptor needs resolved.
+     * @return the metadata, or {@code null} if the method need not lock
+     */
+    protected LockConfigMetadata getLockConfigMetadata(Method method, Class<?> targetClass) {
+        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
         LockConfigMetadata metadata = this.metadataCache.get(cacheKey);
         if (metadata == null) {
-            KeyGenerator keyGenerator;
-            if (StringUtils.hasText(lockCfg.getKeyGenerator())) {
-                keyGenerator = getBean(lockCfg.getKeyGenerator(), KeyGenerator.class);
+            Collection<LockOperationConfig> lockCfgs = getLockConfigSource().getLockConfig(method, targetClass);
+            if (CollectionUtils.isEmpty(lockCfgs)) {
+                metadata = NO_LOCK_METADATA;
             } else {
-                keyGenerator = getKeyGenerator();
+                metadata = createLockConfigMetadata(lockCfgs.iterator().next(), method, targetClass);
             }
-            LockManager lockManager;
-            if (StringUtils.hasText(lockCfg.getLockManager())) {
-                lockManager = getBean(lockCfg.getLockManager(), LockManager.class);
-            } else {
-                lockManager = getLockManager();
+            // the first invocations racing must share one plan, e.g. for its flights
+            LockConfigMetadata existing = this.metadataCache.putIfAbsent(cacheKey, metadata);
+            if (existing != null) {
+                metadata = existing;
             }
-            metadata = new LockConfigMetadata(lockCfg, method, targetClass, keyGenerator, lockManager);
-            this.metadataCache.put(cacheKey, metadata);
         }
-        return metadata;
+        return (metadata != NO_LOCK_METADATA ? metadata : null);
+    }
+
+    private LockConfigMetadata createLockConfigMetadata(LockOperationConfig lockCfg, Method method, Class<?> targetClass) {
+        resolveOptionalBeans();
+        KeyGenerator keyGenerator;
+        if (StringUtils.hasText(lockCfg.getKeyGenerator())) {
+            keyGenerator = getBean(lockCfg.getKeyGenerator(), KeyGenerator.class);
+        } else {
+            keyGenerator = getKeyGenerator();
+        }
+        LockManager lockManager;
+        if (StringUtils.hasText(lockCfg.getLockManager())) {
+            lockManager = getBean(lockCfg.getLockManager(), LockManager.class);
+        } else {
+            lockManager = getLockManager();
+        }
+        // the lock manager the locks are held in, whatever views and tiers the operation uses on top of it
+        LockManager baseLockManager = lockManager;
+        while (baseLockManager instanceof CoalescingLockManager) {
+            baseLockManager = ((CoalescingLockManager) baseLockManager).getDelegate();
+        }
+        RetryStrategy retryStrategy = null;
+        if (StringUtils.hasText(lockCfg.getRetryStrategy())) {
+            retryStrategy = getBean(lockCfg.getRetryStrategy(), RetryStrategy.class);
+            if (!(lockManager instanceof RetryableLockManager)) {
+                throw new IllegalStateException("Lock manager of '" + method + "' does not support retry strategies, " +
+                        "it must implement " + RetryableLockManager.class.getName());
+            }
+            lockManager = getRetryingLockManager((RetryableLockManager) lockManager, retryStrategy);
+        }
+        Expression keyExpression = null;
+        if (StringUtils.hasText(lockCfg.getKey()) && LockOperationExpressionEvaluator.isExpression(lockCfg.getKey())) {
+            keyExpression = this.evaluator.parseExpression(lockCfg.getKey());
+        }
+        boolean multiKey = !StringUtils.hasText(lockCfg.getKey()) && keyGenerator instanceof MultiKeyGenerator &&
+                ((MultiKeyGenerator) keyGenerator).isMultiKey(method);
+        if (multiKey && lockCfg.getMode() != LockMode.EXCLUSIVE) {
+            throw new IllegalStateException("Multi-key locks of '" + method + "' only support the " +
+                    LockMode.EXCLUSIVE + " mode");
+        }
+        if (multiKey && lockCfg.getPermits() > 1) {
+            throw new IllegalStateException("Multi-key locks of '" + method + "' do not support permits");
+        }
+        if (multiKey && !(lockManager instanceof MultiLockManager)) {
+            throw new IllegalStateException("Lock manager of '" + method + "' does not support multi-key locks, " +
+                    "it must implement " + MultiLockManager.class.getName());
+        }
+        if (lockCfg.getMode() != LockMode.EXCLUSIVE && !(lockManager instanceof ReadWriteLockManager)) {
+            throw new IllegalStateException("Lock manager of '" + method + "' does not support read/write locks, " +
+                    "it must implement " + ReadWriteLockManager.class.getName());
+        }
+        if (lockCfg.getPermits() > 1 && !(lockManager instanceof SemaphoreLockManager)) {
+            throw new IllegalStateException("Lock manager of '" + method + "' does not support permits, " +
+                    "it must implement " + SemaphoreLockManager.class.getName());
+        }
+        if (lockCfg.isSingleFlight() && (multiKey || AsyncReturnType.forMethod(method) != null)) {
+            throw new IllegalStateException("Single-flight of '" + method + "' is only supported for a single " +
+                    "key and a method not returning a future");
+        }
+        if (lockCfg.isIdempotent() && (multiKey || AsyncReturnType.forMethod(method) != null)) {
+            throw new IllegalStateException("Idempotent invocations of '" + method + "' are only supported for " +
+                    "a single key and a method not returning a future");
+        }
+        if (lockCfg.getResultTtlMillSeconds() > 0 && this.resultStore == null) {
+            throw new IllegalStateException("No LockResultStore to publish the results of '" + method + "' to, " +
+                    "define a " + LockResultStore.class.getName() + " bean");
+        }
+        int lockTokenIndex = getLockTokenIndex(method);
+        boolean fencing = lockCfg.isFencing() || lockTokenIndex >= 0;
+        if (fencing && (multiKey || lockCfg.getMode() != LockMode.EXCLUSIVE || lockCfg.getPermits() > 1)) {
+            throw new IllegalStateException("Fencing tokens of '" + method + "' are only supported for a single " +
+                    "key in the " + LockMode.EXCLUSIVE + " mode with 1 permit");
+        }
+        if (fencing && !(lockManager instanceof FencingLockManager)) {
+            throw new IllegalStateException("Lock manager of '" + method + "' does not support fencing tokens, " +
+                    "it must implement " + FencingLockManager.class.getName());
+        }
+        // the local tier only queues single key exclusive locks, it would let one permit per JVM through,
+        // and does not issue fencing tokens. Methods returning a future keep the non-blocking acquire of
+        // an AsyncLockManager, polling the local tier would also leave and re-enter a fair queue each time
+        if (this.localCoalescing && !multiKey && lockCfg.getMode() == LockMode.EXCLUSIVE &&
+                lockCfg.getPermits() == 1 && !fencing && AsyncReturnType.forMethod(method) == null) {
+            lockManager = getCoalescingLockManager(lockManager);
+        }
+        LockMetrics metrics = null;
+        if (this.lockMetricsFactory != null) {
+            // tagged with the prefix or the method, keys would make the number of meters unbounded
+            Class<?> userClass = ClassUtils.getUserClass(targetClass != null ? targetClass : method.getDeclaringClass());
+            String lockName = StringUtils.hasText(lockCfg.getPrefix()) ? lockCfg.getPrefix() :
+                    ClassUtils.getShortName(userClass) + '.' + method.getName();
+            metrics = this.lockMetricsFactory.forOperation(lockName, lockCfg.getActionAfterAcquireFailed());
+        }
+        return new LockConfigMetadata(lockCfg, method, targetClass, keyGenerator, lockManager, baseLockManager,
+                keyExpression, multiKey, retryStrategy, this.adaptiveLeasePolicy, metrics, fencing, lockTokenIndex);
+    }
+
+    /**
+     * Return the index of the {@link LockToken} parameter of the given method, or -1.
+     */
+    private int getLockTokenIndex(Method method) {
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        Class<?>[] paramTypes = method.getParameterTypes();
+        for (int i = 0; i < paramAnnotations.length; i++) {
+            for (Annotation annotation : paramAnnotations[i]) {
+                if (annotation.annotationType() == LockToken.class) {
+                    if (paramTypes[i] != long.class && paramTypes[i] != Long.class) {
+                        throw new IllegalStateException("@LockToken parameter of '" + method + "' must be a long");
+                    }
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the view of the given lock manager using the given retry strategy, the same
+     * instance for all operations using both.
+     */
+    private LockManager getRetryingLockManager(RetryableLockManager lockManager, RetryStrategy retryStrategy) {
+        List<Object> cacheKey = Arrays.<Object>asList(lockManager, retryStrategy);
+        LockManager retryingLockManager = this.retryingLockManagers.get(cacheKey);
+        if (retryingLockManager == null) {
+            retryingLockManager = lockManager.withRetryStrategy(retryStrategy);
+            LockManager existing = this.retryingLockManagers.putIfAbsent(cacheKey, retryingLockManager);
+            if (existing != null) {
+                retryingLockManager = existing;
+            }
+        }
+        return retryingLockManager;
+    }
+
+    /**
+     * Return the {@link CoalescingLockManager} in front of the given lock manager, the same
+     * instance for all operations using it, so that they share the local locks.
+     */
+    private LockManager getCoalescingLockManager(LockManager lockManager) {
+        LockManager coalescingLockManager = this.coalescingLockManagers.get(lockManager);
+        if (coalescingLockManager == null) {
+            coalescingLockManager = new CoalescingLockManager(lockManager);
+            LockManager existing = this.coalescingLockManagers.putIfAbsent(lockManager, coalescingLockManager);
+            if (existing != null) {
+                coalescingLockManager = existing;
+            }
+        }
+        return coalescingLockManager;
     }
 
     /**
@@ -122,11 +879,67 @@ public abstract class LockAspectSupport implements BeanFactoryAware, Initializin
         this.beanFactory = beanFactory;
     }
 
+    @Override
+    public void setBeanClassLoader(ClassLoader classLoader) {
+        this.evaluator = new LockOperationExpressionEvaluator(classLoader);
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         this.lockManager = getBean(SIMPLE_LOCK_MANAGER_BEAN_NAME, LockManager.class);
     }
 
+    /**
+     * Look up the meter registry, result store and result codec beans once, when the first plan
+     * is created rather than when this aspect is initialized. The aspect is created early, as
+     * infrastructure of the bean factory, and looking them up then would create them, and the
+     * beans they depend on, before the post-processors which should apply to them.
+     */
+    private void resolveOptionalBeans() {
+        if (this.optionalBeansResolved) {
+            return;
+        }
+        synchronized (this) {
+            if (this.optionalBeansResolved) {
+                return;
+            }
+            this.lockMetricsFactory = LockMetrics.forBeanFactory(this.beanFactory);
+            if (this.lockMetricsFactory != null) {
+                AcquireRetries.enable();
+            }
+            LockResultStore resultStore = getUniqueBean(LockResultStore.class);
+            if (resultStore != null) {
+                this.resultStore = resultStore;
+            }
+            ResultCodec resultCodec = getUniqueBean(ResultCodec.class);
+            if (resultCodec != null) {
+                this.resultCodec = resultCodec;
+            }
+            this.optionalBeansResolved = true;
+        }
+    }
+
+    /**
+     * Return the only bean of the given type, or {@code null} if there is none or several.
+     */
+    private <T> T getUniqueBean(Class<T> type) {
+        if (!(this.beanFactory instanceof ListableBeanFactory)) {
+            return null;
+        }
+        String[] beanNames = ((ListableBeanFactory) this.beanFactory).getBeanNamesForType(type);
+        return beanNames.length == 1 ? this.beanFactory.getBean(beanNames[0], type) : null;
+    }
+
+    @Override
+    public void destroy() {
+        if (this.asyncScheduler != null) {
+            this.asyncScheduler.shutdownNow();
+        }
+        if (this.defaultAsyncExecutor != null) {
+            this.defaultAsyncExecutor.shutdown();
+        }
+    }
+
     private Class<?> getTargetClass(Object target) {
         Class<?> targetClass = AopProxyUtils.ultimateTargetClass(target);
         if (targetClass == null && target != null) {
@@ -135,45 +948,201 @@ public abstract class LockAspectSupport implements BeanFactoryAware, Initializin
         return targetClass;
     }
 
-    private static final class LockConfigCacheKey implements Comparable<LockConfigCacheKey> {
+    /**
+     * The lock of one invocation, on one or several keys.
+     */
+    private abstract class Acquisition {
 
-        private final LockOperationConfig lockCfg;
+        // the key passed to the retry strategy
+        private final String retryKey;
 
-        private final AnnotatedElementKey methodCacheKey;
+        private final RetryStrategy retryStrategy;
 
-        private LockConfigCacheKey(LockOperationConfig lockCfg, Method method, Class<?> targetClass) {
-            this.lockCfg = lockCfg;
-            this.methodCacheKey = new AnnotatedElementKey(method, targetClass);
+        Acquisition(String retryKey, RetryStrategy retryStrategy) {
+            this.retryKey = retryKey;
+            this.retryStrategy = retryStrategy;
         }
 
-        @Override
-        public boolean equals(Object other) {
-            if (this == other) {
-                return true;
-            }
-            if (!(other instanceof LockConfigCacheKey)) {
-                return false;
+        abstract String lock(long maxWaitMillSeconds);
+
+        abstract void remove(String token);
+
+        /**
+         * Whether {@link #lockAsync} never blocks the calling thread, not even for a first attempt.
+         */
+        boolean isNonBlocking() {
+            return false;
+        }
+
+        /**
+         * Acquire without parking the calling thread, by retrying single attempts on a timer,
+         * at the intervals of the retry strategy of the operation if any.
+         * @return a future completed with the owner token, or with {@code null} if the max waiting
+         * time elapsed
+         */
+        ListenableFuture<String> lockAsync(final long maxWaitMillSeconds) {
+            final SettableListenableFuture<String> acquired = new SettableListenableFuture<>();
+            final long deadline = System.currentTimeMillis() + maxWaitMillSeconds;
+            final ScheduledExecutorService scheduler = getAsyncScheduler();
+            scheduler.schedule(new Runnable() {
+
+                private int failedAttempts = 1;
+
+                private long delay = nextDelay(1, 0);
+
+                @Override
+                public void run() {
+                    try {
+                        String token = lock(0);
+                        long remaining = deadline - System.currentTimeMillis();
+                        if (token == null && remaining > 0) {
+                            delay = nextDelay(++failedAttempts, delay);
+                            scheduler.schedule(this, Math.min(delay, remaining), TimeUnit.MILLISECONDS);
+                        } else if (!acquired.set(token) && token != null) {
+                            remove(token);
+                        }
+                    } catch (RuntimeException ex) {
+                        acquired.setException(ex);
+                    }
+                }
+            }, Math.min(nextDelay(1, 0), Math.max(0, maxWaitMillSeconds)), TimeUnit.MILLISECONDS);
+            return acquired;
+        }
+
+        private long nextDelay(int failedAttempts, long previousDelay) {
+            return retryStrategy != null ? retryStrategy.nextDelay(retryKey, failedAttempts, previousDelay)
+                    : ASYNC_RETRY_INTERVAL;
+        }
+
+        /**
+         * Release from the thread completing the future of the method, which must not fail.
+         */
+        void removeAsync(String token) {
+            try {
+                remove(token);
+            } catch (RuntimeException ex) {
+                logger.warn("Failed to release lock", ex);
             }
-            LockConfigCacheKey otherKey = (LockConfigCacheKey) other;
-            return (this.lockCfg.equals(otherKey.lockCfg) &&
-                    this.methodCacheKey.equals(otherKey.methodCacheKey));
+        }
+    }
+
+    /**
+     * The lock of one invocation acquired and released through an {@link AsyncLockManager}.
+     */
+    private class NonBlockingAcquisition extends Acquisition {
+
+        private final AsyncLockManager lockManager;
+
+        private final LockConfigMetadata metadata;
+
+        private final String key;
+
+        private NonBlockingAcquisition(AsyncLockManager lockManager, LockConfigMetadata metadata, String key) {
+            super(key, metadata.retryStrategy);
+            this.lockManager = lockManager;
+            this.metadata = metadata;
+            this.key = key;
         }
 
         @Override
-        public int hashCode() {
-            return super.hashCode();
+        String lock(long maxWaitMillSeconds) {
+            return lockManager.lock(key, maxWaitMillSeconds, metadata.leaseMillSeconds);
         }
 
         @Override
-        public int compareTo(LockConfigCacheKey other) {
-            int result = this.lockCfg.getName().compareTo(other.lockCfg.getName());
-            if (result == 0) {
-                result = this.methodCacheKey.compareTo(other.methodCacheKey);
+        void remove(String token) {
+            lockManager.remove(key, token);
+        }
+
+        @Override
+        boolean isNonBlocking() {
+            return true;
+        }
+
+        @Override
+        ListenableFuture<String> lockAsync(long maxWaitMillSeconds) {
+            return lockManager.lockAsync(key, maxWaitMillSeconds, metadata.leaseMillSeconds);
+        }
+
+        @Override
+        void removeAsync(String token) {
+            lockManager.removeAsync(key, token).addCallback(new ListenableFutureCallback<Void>() {
+                @Override
+                public void onSuccess(Void result) {
+                }
+
+                @Override
+                public void onFailure(Throwable ex) {
+                    logger.warn("Failed to release lock of " + key, ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * An invocation in flight, whose outcome the contending invocations of this JVM share.
+     */
+    private static final class Flight {
+
+        // counted down once the outcome is set
+        private final CountDownLatch landed = new CountDownLatch(1);
+
+        private Object result;
+
+        private Throwable failure;
+
+        private Object outcome() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
             }
             return result;
         }
     }
 
+    /**
+     * A lock held by the current thread, which nested invocations on its key re-enter.
+     */
+    private static final class HeldLock {
+
+        // the configured lock manager the lock is held in, see LockConfigMetadata#baseLockManager
+        private final LockManager lockManager;
+
+        private final LockMode mode;
+
+        // the fencing token issued with the lock, or 0
+        private long fencingToken;
+
+        private HeldLock(LockManager lockManager, LockMode mode) {
+            this.lockManager = lockManager;
+            this.mode = mode;
+        }
+
+        /**
+         * Check that an invocation requiring the given mode can re-enter this lock. A writer may
+         * also read, but a reader can not be upgraded: its own read lock would block the write.
+         * The exclusive lock and the read/write lock of a key are different Redis types, so one
+         * can not be taken while holding the other.
+         * @throws IllegalStateException if the invocation can not re-enter this lock
+         */
+        private void checkCovers(LockMode requiredMode, String key) {
+            if (this.mode == requiredMode || (this.mode == LockMode.WRITE && requiredMode == LockMode.READ)) {
+                return;
+            }
+            if (this.mode == LockMode.READ && requiredMode == LockMode.WRITE) {
+                throw new IllegalStateException("upgrading a read lock to a write lock is not supported, " +
+                        "lockKey: " + key);
+            }
+            throw new IllegalStateException("locking a key in the " + requiredMode + " mode while holding it in the " +
+                    this.mode + " mode is not supported, lockKey: " + key);
+        }
+    }
+
+    /**
+     * Invocation plan of a lock operation on a method of a specific target class.
+     */
     protected static class LockConfigMetadata {
 
         private final LockOperationConfig lockCfg;
@@ -182,21 +1151,199 @@ public abstract class LockAspectSupport implements BeanFactoryAware, Initializin
 
         private final Class<?> targetClass;
 
+        // the method on the target class, whose parameter names are exposed to the key expression
+        private final Method targetMethod;
+
         private final KeyGenerator keyGenerator;
 
         private final LockManager lockManager;
 
+        // the configured lock manager, without the retry strategy view or local tier of the operation,
+        // which identifies the locks held by the current thread across operations
+        private final LockManager baseLockManager;
+
+        // the fixed key, or null if the key is computed from the parameters
+        private final String key;
+
+        private final Expression keyExpression;
+
+        // whether the key generator generates several keys, locked all or nothing
+        private final boolean multiKey;
+
+        private final String prefix;
+
+        private final long maxWaitMillSeconds;
+
+        // sized from the execution times if the lease is adaptive
+        private volatile long leaseMillSeconds;
+
+        // the execution times of the method if the lease is adaptive, otherwise null
+        private final ExecutionTimeHistogram executionTimes;
+
+        private final ActionType actionAfterAcquireFailed;
+
+        private final LockMode mode;
+
+        // more than 1 if the key is a semaphore
+        private final int permits;
+
+        // the future type returned by the method if the lock is held until it completes, or null
+        private final AsyncReturnType asyncReturnType;
+
+        // the retry strategy of the operation, or null for the one of the lock manager
+        private final RetryStrategy retryStrategy;
+
+        // the metrics of the operation, or null if not recorded
+        private final LockMetrics metrics;
+
+        // whether the lock issues a fencing token
+        private final boolean fencing;
+
+        // the index of the parameter receiving the fencing token, or -1
+        private final int lockTokenIndex;
+
+        // the invocations in flight by key if they are single-flight, otherwise null
+        private final ConcurrentMap<String, Flight> flights;
+
+        // how long the results are published, or 0
+        private final long resultTtlMillSeconds;
+
+        // whether a published result is returned without locking
+        private final boolean idempotent;
+
         public LockConfigMetadata(LockOperationConfig lockCfg,
                                   Method method,
                                   Class<?> targetClass,
                                   KeyGenerator keyGenerator,
-                                  LockManager lockManager) {
+                                  LockManager lockManager,
+                                  LockManager baseLockManager,
+                                  Expression keyExpression,
+                                  boolean multiKey,
+                                  RetryStrategy retryStrategy,
+                                  AdaptiveLeasePolicy adaptiveLeasePolicy,
+                                  LockMetrics metrics,
+                                  boolean fencing,
+                                  int lockTokenIndex) {
             this.lockCfg = lockCfg;
             this.method = method;
             this.targetClass = targetClass;
+            this.targetMethod = (targetClass != null && !Proxy.isProxyClass(targetClass) ?
+                    AopUtils.getMostSpecificMethod(method, targetClass) : method);
             this.keyGenerator = keyGenerator;
             this.lockManager = lockManager;
+            this.baseLockManager = baseLockManager;
+            this.keyExpression = keyExpression;
+            this.multiKey = multiKey;
+            this.key = StringUtils.hasText(lockCfg.getKey()) && keyExpression == null ? lockCfg.getKey() : null;
+            this.prefix = lockCfg.getPrefix();
+            this.maxWaitMillSeconds = lockCfg.getMaxWaitMillSeconds();
+            if (lockCfg.getLeaseMillSeconds() > 0) {
+                this.leaseMillSeconds = lockCfg.getLeaseMillSeconds();
+                this.executionTimes = null;
+            } else if (adaptiveLeasePolicy != null) {
+                this.leaseMillSeconds = adaptiveLeasePolicy.getMaxLeaseMillSeconds();
+                this.executionTimes = new ExecutionTimeHistogram();
+            } else {
+                this.leaseMillSeconds = DEFAULT_LEASE_MILL_SECONDS;
+                this.executionTimes = null;
+            }
+            this.actionAfterAcquireFailed = lockCfg.getActionAfterAcquireFailed();
+            this.mode = lockCfg.getMode();
+            this.permits = lockCfg.getPermits();
+            this.asyncReturnType = AsyncReturnType.forMethod(method);
+            this.retryStrategy = retryStrategy;
+            this.metrics = metrics;
+            this.fencing = fencing;
+            this.lockTokenIndex = lockTokenIndex;
+            this.flights = lockCfg.isSingleFlight() ? new ConcurrentHashMap<String, Flight>(16) : null;
+            this.resultTtlMillSeconds = lockCfg.getResultTtlMillSeconds();
+            this.idempotent = lockCfg.isIdempotent();
+        }
+
+        private LockConfigMetadata() {
+            this.lockCfg = null;
+            this.method = null;
+            this.targetClass = null;
+            this.targetMethod = null;
+            this.keyGenerator = null;
+            this.lockManager = null;
+            this.baseLockManager = null;
+            this.key = null;
+            this.keyExpression = null;
+            this.multiKey = false;
+            this.prefix = null;
+            this.maxWaitMillSeconds = 0;
+            this.leaseMillSeconds = 0;
+            this.executionTimes = null;
+            this.actionAfterAcquireFailed = null;
+            this.mode = null;
+            this.permits = 0;
+            this.asyncReturnType = null;
+            this.retryStrategy = null;
+            this.metrics = null;
+            this.fencing = false;
+            this.lockTokenIndex = -1;
+            this.flights = null;
+            this.resultTtlMillSeconds = 0;
+            this.idempotent = false;
+        }
+
+        public LockOperationConfig getLockCfg() {
+            return lockCfg;
+        }
+    }
+
+    /**
+     * Set whether threads of this JVM contending for the same key queue on a local lock,
+     * so that only one of them competes for the distributed lock at a time.
+     * @see CoalescingLockManager
+     */
+    public void setLocalCoalescing(boolean localCoalescing) {
+        this.localCoalescing = localCoalescing;
+    }
+
+    /**
+     * Set the policy sizing the leases of the operations without a fixed lease from the execution
+     * times of their method, or {@code null} to use a lease of 60 seconds. The default is {@code null}.
+     */
+    public void setAdaptiveLeasePolicy(AdaptiveLeasePolicy adaptiveLeasePolicy) {
+        if (adaptiveLeasePolicy != null) {
+            adaptiveLeasePolicy.validate();
         }
+        this.adaptiveLeasePolicy = adaptiveLeasePolicy;
+    }
+
+    /**
+     * Set the executor invoking the methods returning a future once their lock was acquired in
+     * the background, instead of the threads of the lock manager retrying the acquires. The
+     * default is a cached pool of daemon threads.
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * Set the key generator used by the operations which do not name one.
+     * The default is a {@link SimpleKeyGenerator}.
+     */
+    public void setKeyGenerator(KeyGenerator keyGenerator) {
+        this.keyGenerator = keyGenerator;
+    }
+
+    /**
+     * Set the store the operations with a {@code resultTtlMillSeconds} publish their results to.
+     * The only {@link LockResultStore} bean takes precedence. The default is {@code null}.
+     */
+    public void setResultStore(LockResultStore resultStore) {
+        this.resultStore = resultStore;
+    }
+
+    /**
+     * Set the codec of the published results. The only {@link ResultCodec} bean takes precedence.
+     * The default is a {@link CompactResultCodec}.
+     */
+    public void setResultCodec(ResultCodec resultCodec) {
+        this.resultCodec = resultCodec;
     }
 
     public KeyGenerator getKeyGenerator() {
@@ -0,0 +1,44 @@
+package com.justz.lock.interceptor;
+
+import java.lang.reflect.Method;
+
+/**
+ * Root object used during the evaluation of the SpEL key expression of a lock operation.
+ */
+class LockExpressionRootObject {
+
+    private final Method method;
+
+    private final Object[] args;
+
+    private final Object target;
+
+    private final Class<?> targetClass;
+
+    LockExpressionRootObject(Method method, Object[] args, Object target, Class<?> targetClass) {
+        this.method = method;
+        this.args = args;
+        this.target = target;
+        this.targetClass = targetClass;
+    }
+
+    public Method getMethod() {
+        return this.method;
+    }
+
+    public String getMethodName() {
+        return this.method.getName();
+    }
+
+    public Object[] getArgs() {
+        return this.args;
+    }
+
+    public Object getTarget() {
+        return this.target;
+    }
+
+    public Class<?> getTargetClass() {
+        return this.targetClass;
+    }
+}
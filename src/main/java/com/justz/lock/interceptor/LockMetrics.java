@@ -0,0 +1,128 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.enumeration.ActionType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.util.ClassUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one lock operation, with all its meters resolved up front so that recording
+ * does not allocate. Only available when Micrometer is on the classpath and a
+ * {@code MeterRegistry} bean is defined, the primary one if there are several.
+ * <p>The meters are tagged with the lock name, i.e. the key prefix or the method, never
+ * with the key itself:
+ * <ul>
+ * <li>{@code lock.acquire}: acquire latency, tagged with the result, {@code acquired} or
+ * {@code timeout}</li>
+ * <li>{@code lock.acquire.retries}: retries per blocking acquire</li>
+ * <li>{@code lock.hold}: how long the lock was held</li>
+ * <li>{@code lock.acquire.failed}: acquires which failed and took the
+ * {@code actionAfterAcquireFailed}, tagged with the action</li>
+ * </ul>
+ */
+abstract class LockMetrics {
+
+    private static final boolean micrometerPresent = ClassUtils.isPresent(
+            "io.micrometer.core.instrument.MeterRegistry", LockMetrics.class.getClassLoader());
+
+    /**
+     * Return a factory of lock metrics registered in the {@code MeterRegistry} of the given
+     * bean factory, or {@code null} if Micrometer or the registry is not available.
+     */
+    static Factory forBeanFactory(BeanFactory beanFactory) {
+        if (micrometerPresent && beanFactory instanceof ListableBeanFactory) {
+            return MicrometerDelegate.forBeanFactory((ListableBeanFactory) beanFactory);
+        }
+        return null;
+    }
+
+    abstract void acquired(long latencyNanos);
+
+    abstract void timedOut(long latencyNanos);
+
+    abstract void retries(int retries);
+
+    abstract void held(long holdMillSeconds);
+
+    abstract void acquireFailed();
+
+
+    interface Factory {
+
+        LockMetrics forOperation(String lockName, ActionType actionAfterAcquireFailed);
+    }
+
+
+    /**
+     * Inner class to avoid a hard dependency on Micrometer.
+     */
+    private static class MicrometerDelegate extends LockMetrics {
+
+        private final Timer acquired;
+
+        private final Timer timedOut;
+
+        private final DistributionSummary retries;
+
+        private final Timer held;
+
+        private final Counter acquireFailed;
+
+        private MicrometerDelegate(MeterRegistry registry, String lockName, ActionType actionAfterAcquireFailed) {
+            this.acquired = registry.timer("lock.acquire", "lock", lockName, "result", "acquired");
+            this.timedOut = registry.timer("lock.acquire", "lock", lockName, "result", "timeout");
+            this.retries = registry.summary("lock.acquire.retries", "lock", lockName);
+            this.held = registry.timer("lock.hold", "lock", lockName);
+            this.acquireFailed = registry.counter("lock.acquire.failed", "lock", lockName,
+                    "action", String.valueOf(actionAfterAcquireFailed));
+        }
+
+        static Factory forBeanFactory(ListableBeanFactory beanFactory) {
+            final MeterRegistry registry;
+            try {
+                // by type, so that the primary one of several registries, e.g. a composite registry, is used
+                registry = beanFactory.getBean(MeterRegistry.class);
+            } catch (NoSuchBeanDefinitionException ex) {
+                return null;
+            }
+            return new Factory() {
+                @Override
+                public LockMetrics forOperation(String lockName, ActionType actionAfterAcquireFailed) {
+                    return new MicrometerDelegate(registry, lockName, actionAfterAcquireFailed);
+                }
+            };
+        }
+
+        @Override
+        void acquired(long latencyNanos) {
+            acquired.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        void timedOut(long latencyNanos) {
+            timedOut.record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        void retries(int retries) {
+            this.retries.record(retries);
+        }
+
+        @Override
+        void held(long holdMillSeconds) {
+            held.record(holdMillSeconds, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        void acquireFailed() {
+            acquireFailed.increment(1);
+        }
+    }
+}
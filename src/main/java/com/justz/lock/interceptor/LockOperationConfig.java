@@ -1,8 +1,7 @@
 package com.justz.lock.interceptor;
 
 import com.justz.lock.enumeration.ActionType;
-
-import java.util.concurrent.TimeUnit;
+import com.justz.lock.enumeration.LockMode;
 
 /**
  * config for lock operation
@@ -19,10 +18,26 @@ public class LockOperationConfig {
 
     private long maxWaitMillSeconds;
 
+    private long leaseMillSeconds;
+
     private String lockManager;
 
+    private String retryStrategy;
+
     private ActionType actionAfterAcquireFailed;
 
+    private LockMode mode = LockMode.EXCLUSIVE;
+
+    private int permits = 1;
+
+    private boolean fencing;
+
+    private boolean singleFlight;
+
+    private long resultTtlMillSeconds;
+
+    private boolean idempotent;
+
     public String getName() {
         return name;
     }
@@ -63,6 +78,14 @@ public class LockOperationConfig {
         this.maxWaitMillSeconds = maxWaitMillSeconds;
     }
 
+    public long getLeaseMillSeconds() {
+        return leaseMillSeconds;
+    }
+
+    public void setLeaseMillSeconds(long leaseMillSeconds) {
+        this.leaseMillSeconds = leaseMillSeconds;
+    }
+
     public String getLockManager() {
         return lockManager;
     }
@@ -71,6 +94,14 @@ public class LockOperationConfig {
         this.lockManager = lockManager;
     }
 
+    public String getRetryStrategy() {
+        return retryStrategy;
+    }
+
+    public void setRetryStrategy(String retryStrategy) {
+        this.retryStrategy = retryStrategy;
+    }
+
     public ActionType getActionAfterAcquireFailed() {
         return actionAfterAcquireFailed;
     }
@@ -79,6 +110,85 @@ public class LockOperationConfig {
         this.actionAfterAcquireFailed = actionAfterAcquireFailed;
     }
 
+    public LockMode getMode() {
+        return mode;
+    }
+
+    public void setMode(LockMode mode) {
+        this.mode = mode;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public void setPermits(int permits) {
+        this.permits = permits;
+    }
+
+    public boolean isFencing() {
+        return fencing;
+    }
+
+    public void setFencing(boolean fencing) {
+        this.fencing = fencing;
+    }
+
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    public long getResultTtlMillSeconds() {
+        return resultTtlMillSeconds;
+    }
+
+    public void setResultTtlMillSeconds(long resultTtlMillSeconds) {
+        this.resultTtlMillSeconds = resultTtlMillSeconds;
+    }
+
+    public boolean isIdempotent() {
+        return idempotent;
+    }
+
+    public void setIdempotent(boolean idempotent) {
+        this.idempotent = idempotent;
+    }
+
+    /**
+     * Return an identifying description for this lock operation.
+     * <p>Has to be overridden in subclasses for correct {@code equals}
+     * and {@code hashCode} behavior.
+     */
+    @Override
+    public String toString() {
+        return getOperationDescription().toString();
+    }
+
+    protected StringBuilder getOperationDescription() {
+        StringBuilder result = new StringBuilder(getClass().getSimpleName());
+        result.append("[").append(this.name);
+        result.append("] key='").append(this.key);
+        result.append("' | prefix='").append(this.prefix);
+        result.append("' | keyGenerator='").append(this.keyGenerator);
+        result.append("' | lockManager='").append(this.lockManager);
+        result.append("' | retryStrategy='").append(this.retryStrategy);
+        result.append("' | maxWaitMillSeconds='").append(this.maxWaitMillSeconds);
+        result.append("' | leaseMillSeconds='").append(this.leaseMillSeconds);
+        result.append("' | actionAfterAcquireFailed='").append(this.actionAfterAcquireFailed);
+        result.append("' | mode='").append(this.mode);
+        result.append("' | permits='").append(this.permits);
+        result.append("' | fencing='").append(this.fencing);
+        result.append("' | singleFlight='").append(this.singleFlight);
+        result.append("' | resultTtlMillSeconds='").append(this.resultTtlMillSeconds);
+        result.append("' | idempotent='").append(this.idempotent);
+        result.append("'");
+        return result;
+    }
+
     @Override
     public boolean equals(Object other) {
         return (other instanceof LockOperationConfig && toString().equals(other.toString()));
@@ -0,0 +1,124 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Utility class handling the SpEL expression parsing and evaluation of lock keys.
+ * <p>Keys are templates whose expressions are delimited by <code>#{</code> and <code>}</code>.
+ * They are parsed once per method and run through the SpEL compiler
+ * ({@link SpelCompilerMode#MIXED}), so after the first evaluations they are executed as
+ * generated bytecode instead of being interpreted reflectively.
+ * <p>The method arguments are available as variables named after the parameters,
+ * or as {@code #p0}/{@code #a0}. The parameter names are discovered once per method.
+ */
+class LockOperationExpressionEvaluator {
+
+    private static final String EXPRESSION_PREFIX = ParserContext.TEMPLATE_EXPRESSION.getExpressionPrefix();
+
+    private static final String[] NO_PARAMETER_NAMES = new String[0];
+
+    private final SpelExpressionParser parser;
+
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final ConcurrentMap<Method, String[]> parameterNamesCache = new ConcurrentHashMap<>(256);
+
+    LockOperationExpressionEvaluator(ClassLoader classLoader) {
+        this.parser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, classLoader));
+    }
+
+    /**
+     * Whether the given key should be evaluated as a template: it contains at least one
+     * <code>#{...}</code> expression. Other keys are used literally.
+     */
+    static boolean isExpression(String key) {
+        return key.contains(EXPRESSION_PREFIX);
+    }
+
+    Expression parseExpression(String expression) {
+        return this.parser.parseExpression(expression, ParserContext.TEMPLATE_EXPRESSION);
+    }
+
+    String evaluate(Expression expression, Method method, Object[] args, Object target, Class<?> targetClass) {
+        LockExpressionRootObject rootObject = new LockExpressionRootObject(method, args, target, targetClass);
+        Object value = expression.getValue(new LockEvaluationContext(rootObject, args, getParameterNames(method)));
+        if (value == null) {
+            throw new IllegalArgumentException("lock key expression '" + expression.getExpressionString() +
+                    "' evaluated to null on '" + method + "'");
+        }
+        return value.toString();
+    }
+
+    private String[] getParameterNames(Method method) {
+        String[] parameterNames = this.parameterNamesCache.get(method);
+        if (parameterNames == null) {
+            parameterNames = this.parameterNameDiscoverer.getParameterNames(method);
+            if (parameterNames == null) {
+                parameterNames = NO_PARAMETER_NAMES;
+            }
+            this.parameterNamesCache.put(method, parameterNames);
+        }
+        return parameterNames;
+    }
+
+
+    /**
+     * Evaluation context resolving the arguments as variables on lookup, by name or as
+     * {@code p<index>}/{@code a<index>}, without registering them up front.
+     */
+    private static final class LockEvaluationContext extends StandardEvaluationContext {
+
+        private final Object[] args;
+
+        private final String[] parameterNames;
+
+        private LockEvaluationContext(Object rootObject, Object[] args, String[] parameterNames) {
+            super(rootObject);
+            this.args = args;
+            this.parameterNames = parameterNames;
+        }
+
+        @Override
+        public Object lookupVariable(String name) {
+            Object variable = super.lookupVariable(name);
+            if (variable != null) {
+                return variable;
+            }
+            for (int i = 0; i < this.parameterNames.length && i < this.args.length; i++) {
+                if (name.equals(this.parameterNames[i])) {
+                    return this.args[i];
+                }
+            }
+            if (name.length() > 1 && (name.charAt(0) == 'p' || name.charAt(0) == 'a')) {
+                int index = parseIndex(name);
+                if (index >= 0 && index < this.args.length) {
+                    return this.args[index];
+                }
+            }
+            return null;
+        }
+
+        private static int parseIndex(String name) {
+            int index = 0;
+            for (int i = 1; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c < '0' || c > '9' || index > Integer.MAX_VALUE / 10) {
+                    return -1;
+                }
+                index = index * 10 + (c - '0');
+            }
+            return index;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Receives the release notifications published by {@link SimpleLockManager#remove} and
+ * wakes up the threads of this JVM waiting on the released key.
+ * <p>The handover notifications of fair locks carry the owner token of the next waiter
+ * instead, which is registered under its token.
+ * <p>One listener is shared by all waiters, so a JVM only needs one subscription connection.
+ */
+class LockReleaseListener implements MessageListener {
+
+    static final String RELEASE_CHANNEL = "spring-redis-lock:release";
+
+    static final String HANDOVER_CHANNEL = "spring-redis-lock:handover";
+
+    private final ConcurrentMap<String, Waiters> waitersByKey = new ConcurrentHashMap<>(256);
+
+    private final RedisSerializer<String> serializer;
+
+    LockReleaseListener(RedisSerializer<String> serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Waiters waiters = waitersByKey.get(serializer.deserialize(message.getBody()));
+        if (waiters != null) {
+            waiters.signalAll();
+        }
+    }
+
+    /**
+     * Register the current thread as a waiter of the given key or token. Must be paired with
+     * {@link #unregister(String, Waiters)}.
+     */
+    Waiters register(String key) {
+        while (true) {
+            Waiters waiters = waitersByKey.get(key);
+            if (waiters == null) {
+                Waiters created = new Waiters();
+                waiters = waitersByKey.putIfAbsent(key, created);
+                if (waiters == null) {
+                    waiters = created;
+                }
+            }
+            if (waiters.retain()) {
+                return waiters;
+            }
+            // the entry is being discarded by the last waiter, try again with a fresh one
+            waitersByKey.remove(key, waiters);
+        }
+    }
+
+    void unregister(String key, Waiters waiters) {
+        if (waiters.release()) {
+            waitersByKey.remove(key, waiters);
+        }
+    }
+
+    /**
+     * Waiters of one key. The generation is bumped on every release notification, so a waiter
+     * that read the generation before its last attempt can not miss a release.
+     * <p>Asynchronous waiters register a callback instead of waiting, which is run by the
+     * notifying thread and must not block.
+     */
+    static final class Waiters {
+
+        private int count;
+
+        private long generation;
+
+        private boolean discarded;
+
+        private List<Runnable> callbacks;
+
+        synchronized boolean retain() {
+            if (discarded) {
+                return false;
+            }
+            count++;
+            return true;
+        }
+
+        synchronized boolean release() {
+            if (--count == 0) {
+                discarded = true;
+                return true;
+            }
+            return false;
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        void signalAll() {
+            List<Runnable> signaled = null;
+            synchronized (this) {
+                generation++;
+                notifyAll();
+                if (callbacks != null && !callbacks.isEmpty()) {
+                    signaled = new ArrayList<>(callbacks);
+                }
+            }
+            if (signaled != null) {
+                for (Runnable callback : signaled) {
+                    callback.run();
+                }
+            }
+        }
+
+        synchronized void addCallback(Runnable callback) {
+            if (callbacks == null) {
+                callbacks = new ArrayList<>(2);
+            }
+            callbacks.add(callback);
+        }
+
+        synchronized void removeCallback(Runnable callback) {
+            if (callbacks != null) {
+                callbacks.remove(callback);
+            }
+        }
+
+        /**
+         * Wait until a release after the given generation is notified, or the timeout elapsed.
+         */
+        synchronized void await(long generation, long timeoutMillSeconds) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillSeconds;
+            while (this.generation == generation) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return;
+                }
+                wait(remaining);
+            }
+        }
+    }
+}
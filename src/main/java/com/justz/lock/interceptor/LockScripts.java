@@ -0,0 +1,134 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lua scripts used by {@link SimpleLockManager}. They are executed with {@code EVALSHA},
+ * so only the sha1 digest is sent once the script is loaded.
+ */
+final class LockScripts {
+
+    /**
+     * Delete the lock key only if it still holds the owner token, optionally publish
+     * the release notification if the key is marked as waited for. Returns 1 if the lock was released.
+     */
+    static final RedisScript<Long> RELEASE = script("release.lua", Long.class);
+
+    /**
+     * Extend the lease of the lock key, exclusive, read/write or semaphore, only if it still holds the owner token.
+     * Returns 1 if the lease was extended.
+     */
+    static final RedisScript<Long> RENEW = script("renew.lua", Long.class);
+
+    /**
+     * Lock all the given keys or none of them, rolling back the keys already set when one is
+     * held by others. Returns 0 if locked, otherwise the 1-based index of the key held by others.
+     */
+    static final RedisScript<Long> LOCK_MULTI = script("lock_multi.lua", Long.class);
+
+    /**
+     * Delete the given keys still holding the owner token, optionally publish the release
+     * notifications of the keys marked as waited for. Returns the number of keys released.
+     */
+    static final RedisScript<Long> RELEASE_MULTI = script("release_multi.lua", Long.class);
+
+    /**
+     * Acquire a read lock unless a writer holds or waits for the lock. Returns 1 if acquired.
+     */
+    static final RedisScript<Long> LOCK_READ = script("lock_read.lua", Long.class);
+
+    /**
+     * Acquire the write lock if nobody holds it, otherwise register as the waiting writer so
+     * new readers are refused. Returns 1 if acquired.
+     */
+    static final RedisScript<Long> LOCK_WRITE = script("lock_write.lua", Long.class);
+
+    /**
+     * Release a read lock, delete the lock and optionally publish the release notification
+     * when the last reader leaves. Returns 1 if the read lock was held.
+     */
+    static final RedisScript<Long> RELEASE_READ = script("release_read.lua", Long.class);
+
+    /**
+     * Release the write lock if it holds the owner token, optionally publish the release
+     * notification. Returns 1 if released.
+     */
+    static final RedisScript<Long> RELEASE_WRITE = script("release_write.lua", Long.class);
+
+    /**
+     * Reap the expired permits of a semaphore, then acquire a permit if one is left.
+     * Returns 1 if acquired.
+     */
+    static final RedisScript<Long> LOCK_PERMIT = script("lock_permit.lua", Long.class);
+
+    /**
+     * Release the permit of the owner token, optionally publish the release notification.
+     * Returns 1 if released.
+     */
+    static final RedisScript<Long> RELEASE_PERMIT = script("release_permit.lua", Long.class);
+
+    /**
+     * Acquire the lock if it is free and the owner token is the head of the waiting queue or the
+     * queue is empty, otherwise enqueue the token or refresh its entry. Returns 1 if acquired.
+     */
+    static final RedisScript<Long> LOCK_FAIR = script("lock_fair.lua", Long.class);
+
+    /**
+     * Delete the lock key only if it still holds the owner token and notify the head of the
+     * waiting queue. Returns 1 if the lock was released.
+     */
+    static final RedisScript<Long> RELEASE_FAIR = script("release_fair.lua", Long.class);
+
+    /**
+     * Remove a waiter giving up from the waiting queue, notify the next one if it was the head.
+     * Returns 1 if the waiter was queued.
+     */
+    static final RedisScript<Long> CANCEL_FAIR = script("cancel_fair.lua", Long.class);
+
+    /**
+     * Set the lock key if absent, advancing the fencing counter of the key in the same call,
+     * at least to the given time. Returns the fencing token if locked, otherwise 0.
+     */
+    static final RedisScript<Long> LOCK_FENCED = script("lock_fenced.lua", Long.class);
+
+    static final List<RedisScript<?>> ALL = Collections.unmodifiableList(Arrays.<RedisScript<?>>asList(
+            RELEASE, RENEW, LOCK_MULTI, RELEASE_MULTI, LOCK_READ, LOCK_WRITE, RELEASE_READ, RELEASE_WRITE,
+            LOCK_PERMIT, RELEASE_PERMIT, LOCK_FAIR, RELEASE_FAIR, CANCEL_FAIR, LOCK_FENCED));
+
+    private LockScripts() {
+    }
+
+    /**
+     * Load all scripts into the script cache of the server.
+     */
+    static void load(final StringRedisTemplate stringRedisTemplate) {
+        final RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        stringRedisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for (RedisScript<?> script : ALL) {
+                    connection.scriptLoad(serializer.serialize(script.getScriptAsString()));
+                }
+                return null;
+            }
+        });
+    }
+
+    private static <T> RedisScript<T> script(String name, Class<T> resultType) {
+        DefaultRedisScript<T> script = new DefaultRedisScript<>();
+        script.setLocation(new ClassPathResource(name, LockScripts.class));
+        script.setResultType(resultType);
+        return script;
+    }
+}
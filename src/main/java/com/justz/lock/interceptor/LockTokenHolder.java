@@ -0,0 +1,50 @@
+package com.justz.lock.interceptor;
+
+import org.springframework.core.NamedThreadLocal;
+
+/**
+ * Holds the fencing token of the lock of the method being invoked on the current thread,
+ * for the operations using {@link com.justz.lock.annotation.Lock#fencing() fencing}. Nested
+ * operations bind their own token and restore the outer one when they return.
+ * <p>For a method returning a future, the token is only bound while the method itself runs.
+ */
+public final class LockTokenHolder {
+
+    private static final ThreadLocal<long[]> fencingToken = new NamedThreadLocal<long[]>("Lock fencing token") {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private LockTokenHolder() {
+    }
+
+    /**
+     * Return the fencing token of the lock held by the current invocation.
+     * @throws IllegalStateException if the current invocation holds no fenced lock
+     */
+    public static long currentFencingToken() {
+        long token = fencingToken.get()[0];
+        if (token == 0) {
+            throw new IllegalStateException("no fenced lock is held by the current thread, " +
+                    "use @Lock(fencing = true) or a @LockToken parameter");
+        }
+        return token;
+    }
+
+    /**
+     * Bind the given token to the current thread.
+     * @return the token bound before, to {@link #restore}
+     */
+    static long bind(long token) {
+        long[] holder = fencingToken.get();
+        long previous = holder[0];
+        holder[0] = token;
+        return previous;
+    }
+
+    static void restore(long previous) {
+        fencingToken.get()[0] = previous;
+    }
+}
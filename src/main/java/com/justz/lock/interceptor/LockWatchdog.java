@@ -0,0 +1,187 @@
+package com.justz.lock.interceptor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the locks held by this JVM alive until they are removed. On every tick the leases
+ * due for renewal (a third of the lease has passed) are extended in one pipelined batch,
+ * so the cost of a tick does not grow with a round trip per held lock.
+ * <p>Ticks run at the given interval, or earlier when a held lock is due for renewal before,
+ * so that leases shorter than the interval are renewed in time as well.
+ */
+class LockWatchdog implements Runnable {
+
+    private final Logger logger = LoggerFactory.getLogger(LockWatchdog.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final long intervalMillSeconds;
+
+    private final ConcurrentMap<String, HeldLock> heldLocks = new ConcurrentHashMap<>(256);
+
+    private ScheduledExecutorService scheduler;
+
+    // the next tick, and the time it runs at
+    private ScheduledFuture<?> nextTick;
+
+    private volatile long nextTickAt = Long.MAX_VALUE;
+
+    LockWatchdog(StringRedisTemplate stringRedisTemplate, long intervalMillSeconds) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.intervalMillSeconds = intervalMillSeconds;
+    }
+
+    void start() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("lock-watchdog-");
+        threadFactory.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        scheduleTick(System.currentTimeMillis() + intervalMillSeconds);
+    }
+
+    void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    void track(String key, String token, long leaseMillSeconds) {
+        HeldLock heldLock = new HeldLock(key, token, leaseMillSeconds);
+        heldLocks.put(heldLock.id, heldLock);
+        if (heldLock.renewAt < nextTickAt) {
+            scheduleTick(heldLock.renewAt);
+        }
+    }
+
+    /**
+     * Schedule the next tick at the given time, unless one is scheduled before it.
+     */
+    private synchronized void scheduleTick(long tickAt) {
+        if (scheduler == null || scheduler.isShutdown()) {
+            return;
+        }
+        if (nextTick != null) {
+            if (nextTickAt <= tickAt && !nextTick.isDone()) {
+                return;
+            }
+            nextTick.cancel(false);
+        }
+        nextTickAt = tickAt;
+        nextTick = scheduler.schedule(this, Math.max(0, tickAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    void untrack(String key, String token) {
+        heldLocks.remove(HeldLock.id(key, token));
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            // this tick is running, the next one is scheduled by its end or by a track in the meantime
+            nextTickAt = Long.MAX_VALUE;
+        }
+        try {
+            renewDueLocks();
+        } finally {
+            long tickAt = System.currentTimeMillis() + intervalMillSeconds;
+            for (HeldLock heldLock : heldLocks.values()) {
+                tickAt = Math.min(tickAt, heldLock.renewAt);
+            }
+            scheduleTick(tickAt);
+        }
+    }
+
+    private void renewDueLocks() {
+        if (heldLocks.isEmpty()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final List<HeldLock> dueLocks = new ArrayList<>();
+        for (HeldLock heldLock : heldLocks.values()) {
+            if (heldLock.renewAt <= now) {
+                dueLocks.add(heldLock);
+            }
+        }
+        if (dueLocks.isEmpty()) {
+            return;
+        }
+        final RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        final String sha = LockScripts.RENEW.getSha1();
+        try {
+            List<Object> results = stringRedisTemplate.executePipelined(new RedisCallback<Object>() {
+                @Override
+                public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                    for (HeldLock heldLock : dueLocks) {
+                        connection.evalSha(sha, ReturnType.INTEGER, 1, serializer.serialize(heldLock.key),
+                                serializer.serialize(heldLock.token),
+                                serializer.serialize(String.valueOf(heldLock.leaseMillSeconds)),
+                                serializer.serialize(String.valueOf(now)));
+                    }
+                    return null;
+                }
+            });
+            for (int i = 0; i < dueLocks.size(); i++) {
+                HeldLock heldLock = dueLocks.get(i);
+                if (Long.valueOf(1).equals(results.get(i))) {
+                    heldLock.renewAt = now + heldLock.leaseMillSeconds / 3;
+                } else if (heldLocks.remove(heldLock.id, heldLock)) {
+                    logger.warn("lock lost before released, stop renewing, lockKey: {}", heldLock.key);
+                }
+            }
+        } catch (Exception exception) {
+            logger.warn("renew lock lease failed, will retry on next tick", exception);
+            for (HeldLock heldLock : dueLocks) {
+                // retry within the lease left, but do not spin while redis is unavailable
+                heldLock.renewAt = now + Math.max(1, Math.min(intervalMillSeconds, heldLock.leaseMillSeconds / 6));
+            }
+            // the script cache may have been flushed, e.g. after a server restart
+            try {
+                LockScripts.load(stringRedisTemplate);
+            } catch (Exception ex) {
+                logger.debug("load lock scripts failed", ex);
+            }
+        }
+    }
+
+    private static final class HeldLock {
+
+        // a key can be held several times by this JVM, e.g. by readers
+        private final String id;
+
+        private final String key;
+
+        private final String token;
+
+        private final long leaseMillSeconds;
+
+        private volatile long renewAt;
+
+        private HeldLock(String key, String token, long leaseMillSeconds) {
+            this.id = id(key, token);
+            this.key = key;
+            this.token = token;
+            this.leaseMillSeconds = leaseMillSeconds;
+            this.renewAt = System.currentTimeMillis() + leaseMillSeconds / 3;
+        }
+
+        private static String id(String key, String token) {
+            return token + ' ' + key;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.justz.lock.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * {@link KeyGenerator} able to generate several keys for one invocation, e.g. one for each
+ * element of a collection parameter, all of which are locked together.
+ */
+public interface MultiKeyGenerator extends KeyGenerator {
+
+    /**
+     * Determine whether invocations of the given method lock several keys.
+     * @param method the method being called
+     * @return {@code true} if {@link #generateKeys} should be used for this method
+     */
+    boolean isMultiKey(Method method);
+
+    /**
+     * Generate the keys for the given method and its parameters.
+     * @param targetClass the target instance class
+     * @param method the method being called
+     * @param keyPrefix the prefix of keys
+     * @param params the method parameters (with any var-args expanded)
+     * @return the generated keys
+     */
+    Collection<String> generateKeys(Class<?> targetClass, Method method, String keyPrefix, Object... params);
+
+}
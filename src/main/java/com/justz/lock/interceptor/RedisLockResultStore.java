@@ -0,0 +1,50 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.LockResultStore;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * {@link LockResultStore} keeping the results in Redis, each at the lock key followed by
+ * {@code :result} and expiring with its time to live, so that it shares the hash tag of the key.
+ */
+public class RedisLockResultStore implements LockResultStore {
+
+    // suffix of the key of the result of a lock key
+    private static final String RESULT_SUFFIX = ":result";
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisLockResultStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public byte[] get(String key) {
+        final byte[] rawKey = rawKey(key);
+        return redisTemplate.execute(new RedisCallback<byte[]>() {
+            @Override
+            public byte[] doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.get(rawKey);
+            }
+        });
+    }
+
+    @Override
+    public void put(String key, final byte[] value, final long ttlMillSeconds) {
+        final byte[] rawKey = rawKey(key);
+        redisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                connection.pSetEx(rawKey, ttlMillSeconds, value);
+                return null;
+            }
+        });
+    }
+
+    private byte[] rawKey(String key) {
+        return redisTemplate.getStringSerializer().serialize(key + RESULT_SUFFIX);
+    }
+}
@@ -0,0 +1,257 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.LockManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock manager acquiring a lock on a majority of independent Redis nodes, following the
+ * Redlock algorithm, so that the lock survives the loss of a minority of the nodes.
+ * <p>Each attempt sends {@code SET NX PX} to all the nodes in parallel and completes as soon
+ * as a majority granted it, or enough nodes refused it that a majority is out of reach, so its
+ * latency is that of the slowest node of the quorum. The lock is only acquired if the lease
+ * left after the attempt, minus the allowed clock drift, is still positive. Otherwise, or if
+ * no majority was reached, it is released on all the nodes and attempted again after a random
+ * delay until the max waiting time elapses. Each attempt has its own token, so the release of
+ * a failed attempt, still in flight, never removes the lock granted to the next one.
+ * <p>Releases are sent to all the nodes without waiting for their replies. A node granting
+ * the lock after it was released, e.g. a slow one, releases it right away.
+ */
+public class RedlockLockManager implements LockManager, DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(RedlockLockManager.class);
+
+    // upper bound of the random delay between attempts, in milliseconds
+    private static final int LOCK_RETRY_INTERVAL = 50;
+
+    // fixed part of the allowed clock drift, in milliseconds, for the Redis expiry precision
+    private static final long CLOCK_DRIFT_MILL_SECONDS = 2;
+
+    private final List<StringRedisTemplate> nodes;
+
+    private final int quorum;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong ownerSequence = new AtomicLong();
+
+    private final ExecutorService executor;
+
+    // attempts decided before all the nodes replied, keyed by the token of the attempt
+    private final ConcurrentMap<String, Ballot> pendingBallots = new ConcurrentHashMap<>(64);
+
+    private double clockDriftFactor = 0.01;
+
+    /**
+     * @param nodes the templates of independent Redis masters, an odd number of them is
+     * recommended, e.g. 3 or 5
+     */
+    public RedlockLockManager(List<StringRedisTemplate> nodes) {
+        Assert.notEmpty(nodes, "at least one redis node is required");
+        this.nodes = new ArrayList<>(nodes);
+        this.quorum = nodes.size() / 2 + 1;
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("redlock-");
+        threadFactory.setDaemon(true);
+        this.executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    /**
+     * Set the allowed drift between the clocks of the nodes, as a fraction of the lease.
+     * The default is 0.01.
+     */
+    public void setClockDriftFactor(double clockDriftFactor) {
+        this.clockDriftFactor = clockDriftFactor;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    @Override
+    public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        long deadline = System.currentTimeMillis() + maxWaitMillSeconds;
+        long drift = (long) (leaseMillSeconds * clockDriftFactor) + CLOCK_DRIFT_MILL_SECONDS;
+        String token = null;
+        try {
+            while (true) {
+                token = nodeId + ":" + Thread.currentThread().getId() + ":" + ownerSequence.incrementAndGet();
+                long start = System.nanoTime();
+                Ballot ballot = attempt(key, token, leaseMillSeconds);
+                long validity = leaseMillSeconds - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) - drift;
+                if (ballot.granted.get() >= quorum && validity > 0) {
+                    return token;
+                }
+                remove(key, token);
+                token = null;
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                Thread.sleep(Math.min(remaining, ThreadLocalRandom.current().nextInt(LOCK_RETRY_INTERVAL) + 1));
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            if (token != null) {
+                remove(key, token);
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public void remove(final String key, final String token) {
+        Ballot pendingBallot = pendingBallots.get(token);
+        if (pendingBallot != null) {
+            // the nodes granting it after this point release it themselves
+            pendingBallot.released = true;
+        }
+        for (final StringRedisTemplate node : nodes) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    release(node, key, token);
+                }
+            });
+        }
+    }
+
+    private void release(StringRedisTemplate node, String key, String token) {
+        try {
+            node.execute(LockScripts.RELEASE, Collections.singletonList(key), token);
+        } catch (Exception exception) {
+            // the key expires on its own after the lease
+            logger.warn("release lock on redis node failed, lockKey: {}", key, exception);
+        }
+    }
+
+    /**
+     * Send the lock to all the nodes in parallel, and wait until the outcome is decided,
+     * at most for the lease since past it the lock could not be valid anyway. The nodes still
+     * replying after that keep running.
+     */
+    private Ballot attempt(String key, String token, long leaseMillSeconds) throws InterruptedException {
+        Ballot ballot = new Ballot(quorum, nodes.size() - quorum + 1, nodes.size());
+        for (StringRedisTemplate node : nodes) {
+            executor.execute(new NodeAttempt(node, key, token, leaseMillSeconds, ballot));
+        }
+        ballot.decided.await(leaseMillSeconds, TimeUnit.MILLISECONDS);
+        if (!ballot.isComplete()) {
+            pendingBallots.put(token, ballot);
+            if (ballot.isComplete()) {
+                pendingBallots.remove(token, ballot);
+            }
+        }
+        return ballot;
+    }
+
+    /**
+     * Count of the replies of the nodes to one attempt.
+     */
+    private static final class Ballot {
+
+        private final int quorum;
+
+        // refusals after which a majority is out of reach
+        private final int vetoes;
+
+        private final AtomicInteger granted = new AtomicInteger();
+
+        private final AtomicInteger refused = new AtomicInteger();
+
+        private final CountDownLatch decided = new CountDownLatch(1);
+
+        private final int nodeCount;
+
+        // set before the lock is released on all the nodes
+        private volatile boolean released;
+
+        private Ballot(int quorum, int vetoes, int nodeCount) {
+            this.quorum = quorum;
+            this.vetoes = vetoes;
+            this.nodeCount = nodeCount;
+        }
+
+        boolean isComplete() {
+            return granted.get() + refused.get() == nodeCount;
+        }
+
+        void reply(boolean grant) {
+            if (grant ? granted.incrementAndGet() == quorum : refused.incrementAndGet() == vetoes) {
+                decided.countDown();
+            }
+        }
+    }
+
+    private final class NodeAttempt implements Runnable {
+
+        private final StringRedisTemplate node;
+
+        private final String key;
+
+        private final String token;
+
+        private final long leaseMillSeconds;
+
+        private final Ballot ballot;
+
+        private NodeAttempt(StringRedisTemplate node, String key, String token, long leaseMillSeconds,
+                            Ballot ballot) {
+            this.node = node;
+            this.key = key;
+            this.token = token;
+            this.leaseMillSeconds = leaseMillSeconds;
+            this.ballot = ballot;
+        }
+
+        @Override
+        public void run() {
+            boolean grant = false;
+            try {
+                final RedisSerializer<String> serializer = node.getStringSerializer();
+                Object reply = node.execute(new RedisCallback<Object>() {
+                    @Override
+                    public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                        return connection.execute("SET", serializer.serialize(key), serializer.serialize(token),
+                                serializer.serialize("NX"), serializer.serialize("PX"),
+                                serializer.serialize(String.valueOf(leaseMillSeconds)));
+                    }
+                });
+                grant = reply != null;
+                // granted too late for the release sent to all the nodes
+                if (grant && ballot.released) {
+                    release(node, key, token);
+                }
+            } catch (Exception exception) {
+                logger.debug("lock on redis node failed, lockKey: {}", key, exception);
+            } finally {
+                ballot.reply(grant);
+                if (ballot.isComplete()) {
+                    pendingBallots.remove(token, ballot);
+                }
+            }
+        }
+    }
+}
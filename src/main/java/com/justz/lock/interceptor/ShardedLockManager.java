@@ -0,0 +1,284 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.AsyncLockManager;
+import com.justz.lock.FencingLockManager;
+import com.justz.lock.LockManager;
+import com.justz.lock.MultiLockManager;
+import com.justz.lock.ReadWriteLockManager;
+import com.justz.lock.RetryStrategy;
+import com.justz.lock.RetryableLockManager;
+import com.justz.lock.SemaphoreLockManager;
+import com.justz.lock.enumeration.WaitMode;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Lock manager spreading the keys over several Redis instances, each of them used through
+ * a {@link SimpleLockManager}. A key is assigned to an instance by a consistent hash ring
+ * with virtual nodes placed from the names of the instances, so adding an instance only moves
+ * about its share of the keys, and the assignment does not depend on the order of the instances.
+ * <p>Like Redis Cluster, only the hash tag of a key is hashed if it has one, i.e. the text
+ * between its first <code>{</code> and the next <code>}</code>. All the keys of a multi-key
+ * lock must be on the same instance, which a hash tag ensures, see
+ * {@link com.justz.lock.annotation.LockParam#hashTag}.
+ */
+public class ShardedLockManager implements MultiLockManager, ReadWriteLockManager, SemaphoreLockManager,
+        AsyncLockManager, FencingLockManager, RetryableLockManager, InitializingBean, DisposableBean {
+
+    // virtual nodes of each instance on the ring, more of them spread the keys more evenly
+    private static final int VIRTUAL_NODES = 160;
+
+    private final String[] shardNames;
+
+    private final SimpleLockManager[] shards;
+
+    // positions of the virtual nodes on the ring, ascending
+    private final long[] ringPositions;
+
+    // index of the instance of each position
+    private final int[] ringShards;
+
+    /**
+     * @param connectionFactories the connection factories of the Redis instances, keyed by a
+     * name which places the instance on the ring and must stay the same across restarts
+     */
+    public ShardedLockManager(Map<String, RedisConnectionFactory> connectionFactories) {
+        Assert.notEmpty(connectionFactories, "at least one redis instance is required");
+        int shardCount = connectionFactories.size();
+        this.shardNames = new String[shardCount];
+        this.shards = new SimpleLockManager[shardCount];
+        int index = 0;
+        for (Map.Entry<String, RedisConnectionFactory> entry : connectionFactories.entrySet()) {
+            StringRedisTemplate template = new StringRedisTemplate(entry.getValue());
+            this.shardNames[index] = entry.getKey();
+            this.shards[index] = new SimpleLockManager(template);
+            index++;
+        }
+        this.ringPositions = new long[shardCount * VIRTUAL_NODES];
+        this.ringShards = new int[shardCount * VIRTUAL_NODES];
+        buildRing();
+    }
+
+    private ShardedLockManager(ShardedLockManager parent, RetryStrategy retryStrategy) {
+        this.shardNames = parent.shardNames;
+        this.shards = new SimpleLockManager[parent.shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            this.shards[i] = (SimpleLockManager) parent.shards[i].withRetryStrategy(retryStrategy);
+        }
+        this.ringPositions = parent.ringPositions;
+        this.ringShards = parent.ringShards;
+    }
+
+    private void buildRing() {
+        long[] points = new long[ringPositions.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                // the low bits carry the instance, so that it is kept through the sort
+                points[shard * VIRTUAL_NODES + i] = hash(shardNames[shard] + '#' + i) & ~0xffffL | shard;
+            }
+        }
+        Arrays.sort(points);
+        for (int i = 0; i < points.length; i++) {
+            ringPositions[i] = points[i];
+            ringShards[i] = (int) (points[i] & 0xffff);
+        }
+    }
+
+    /**
+     * @see SimpleLockManager#setWaitMode
+     */
+    public void setWaitMode(WaitMode waitMode) {
+        for (SimpleLockManager shard : shards) {
+            shard.setWaitMode(waitMode);
+        }
+    }
+
+    /**
+     * @see SimpleLockManager#setRetryStrategy
+     */
+    public void setRetryStrategy(RetryStrategy retryStrategy) {
+        for (SimpleLockManager shard : shards) {
+            shard.setRetryStrategy(retryStrategy);
+        }
+    }
+
+    /**
+     * Return a view of this initialized manager using the given retry strategy on every
+     * instance, see {@link SimpleLockManager#withRetryStrategy}.
+     */
+    @Override
+    public LockManager withRetryStrategy(RetryStrategy retryStrategy) {
+        return new ShardedLockManager(this, retryStrategy);
+    }
+
+    /**
+     * @see SimpleLockManager#setWatchdogEnabled
+     */
+    public void setWatchdogEnabled(boolean watchdogEnabled) {
+        for (SimpleLockManager shard : shards) {
+            shard.setWatchdogEnabled(watchdogEnabled);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (SimpleLockManager shard : shards) {
+            shard.afterPropertiesSet();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (SimpleLockManager shard : shards) {
+            shard.destroy();
+        }
+    }
+
+    @Override
+    public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lock(key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void remove(String key, String token) {
+        shardOf(key).remove(key, token);
+    }
+
+    @Override
+    public String lock(Collection<String> keys, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(keys).lock(keys, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void remove(Collection<String> keys, String token) {
+        shardOf(keys).remove(keys, token);
+    }
+
+    @Override
+    public String lockRead(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lockRead(key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public String lockWrite(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lockWrite(key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void removeRead(String key, String token) {
+        shardOf(key).removeRead(key, token);
+    }
+
+    @Override
+    public void removeWrite(String key, String token) {
+        shardOf(key).removeWrite(key, token);
+    }
+
+    @Override
+    public String lockPermit(String key, int permits, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lockPermit(key, permits, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void removePermit(String key, String token) {
+        shardOf(key).removePermit(key, token);
+    }
+
+    @Override
+    public ListenableFuture<String> lockAsync(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lockAsync(key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public ListenableFuture<Void> removeAsync(String key, String token) {
+        return shardOf(key).removeAsync(key, token);
+    }
+
+    @Override
+    public String lockFenced(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return shardOf(key).lockFenced(key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public long getFencingToken(String token) {
+        return shards[0].getFencingToken(token);
+    }
+
+    /**
+     * Return the name of the instance the given key is assigned to.
+     */
+    public String getShardName(String key) {
+        return shardNames[shardIndex(key)];
+    }
+
+    private SimpleLockManager shardOf(String key) {
+        return shards[shardIndex(key)];
+    }
+
+    private SimpleLockManager shardOf(Collection<String> keys) {
+        Iterator<String> iterator = keys.iterator();
+        int shard = shardIndex(iterator.next());
+        while (iterator.hasNext()) {
+            String key = iterator.next();
+            if (shardIndex(key) != shard) {
+                throw new IllegalArgumentException("keys locked together must be on the same redis instance, " +
+                        "give them the same hash tag, e.g. with @LockParam(hashTag = true), keys: " + keys);
+            }
+        }
+        return shards[shard];
+    }
+
+    private int shardIndex(String key) {
+        if (shards.length == 1) {
+            return 0;
+        }
+        long position = hash(hashTag(key));
+        int index = Arrays.binarySearch(ringPositions, position);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        // the first virtual node clockwise, wrapping around
+        return ringShards[index == ringPositions.length ? 0 : index];
+    }
+
+    /**
+     * Return the part of the key which is hashed, following the hash tag rules of Redis Cluster.
+     */
+    private static String hashTag(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key.substring(start + 1, end);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * 64 bit FNV-1a, finished with the avalanche step of MurmurHash3 so that similar keys
+     * land far apart on the ring.
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,62 +1,250 @@
 package com.justz.lock.interceptor;
 
 import com.justz.lock.annotation.LockParam;
-import org.springframework.core.MethodClassKey;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * the default key generator for lock operation.
+ * <p>The indexes of the {@link LockParam} parameters are resolved once per method into a
+ * {@link KeyTemplate}, the key is then written into a single pre-sized builder.
+ * <p>A {@link LockParam} parameter which is a collection or an array generates one key
+ * per element, see {@link #generateKeys}. At most one such parameter is allowed.
+ * <p>The value of a {@link LockParam#hashTag} parameter is enclosed in braces, as the part
+ * of the keys Redis Cluster and the {@link ShardedLockManager} hash, so that the keys locked
+ * together share a slot or a shard.
  */
-public class SimpleKeyGenerator implements KeyGenerator {
+public class SimpleKeyGenerator implements MultiKeyGenerator {
 
-    private final Map<Object, List<Integer>> lockParamIndexCache = new ConcurrentHashMap<>();
+    private static final char SEPARATOR = ':';
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ConcurrentMap<Method, KeyTemplate> keyTemplateCache = new ConcurrentHashMap<>(256);
 
     public String generate(Class<?> targetClass, Method method, String keyPrefix, Object... params) {
-        List<Integer> lockParamIndex = getLockParamIndex(targetClass, method);
-        if (lockParamIndex.size() == 0) {
+        KeyTemplate template = getKeyTemplate(method, keyPrefix);
+        int[] indexes = template.paramIndexes;
+        if (indexes.length == 1 && template.prefix.isEmpty() && template.hashTagPosition < 0 &&
+                params[indexes[0]] instanceof String) {
+            return (String) params[indexes[0]];
+        }
+        return buildKey(template, params, -1, null);
+    }
+
+    @Override
+    public boolean isMultiKey(Method method) {
+        return getMultiParamIndex(method, getLockParamIndexes(method)) >= 0;
+    }
+
+    @Override
+    public Collection<String> generateKeys(Class<?> targetClass, Method method, String keyPrefix, Object... params) {
+        KeyTemplate template = getKeyTemplate(method, keyPrefix);
+        if (template.multiParamIndex < 0) {
+            List<String> keys = new ArrayList<>(1);
+            keys.add(buildKey(template, params, -1, null));
+            return keys;
+        }
+        Object multiParam = params[template.paramIndexes[template.multiParamIndex]];
+        if (multiParam == null) {
+            throw new IllegalArgumentException("param with @LockParam must be not null");
+        }
+        Collection<?> elements = (multiParam instanceof Collection ?
+                (Collection<?>) multiParam : CollectionUtils.arrayToList(multiParam));
+        if (elements.isEmpty()) {
+            throw new IllegalArgumentException("collection or array param with @LockParam must be not empty");
+        }
+        List<String> keys = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            keys.add(buildKey(template, params, template.multiParamIndex, element));
+        }
+        return keys;
+    }
+
+    /**
+     * Write the key of the template, using the given element in place of the parameter at
+     * the given position, if any.
+     */
+    private String buildKey(KeyTemplate template, Object[] params, int elementPosition, Object element) {
+        int[] indexes = template.paramIndexes;
+        StringBuilder key = new StringBuilder(template.estimatedLength);
+        key.append(template.prefix);
+        for (int i = 0; i < indexes.length; i++) {
+            if (i > 0) {
+                key.append(SEPARATOR);
+            }
+            if (i == template.hashTagPosition) {
+                key.append('{');
+                appendParam(key, params[indexes[i]]);
+                key.append('}');
+            } else {
+                appendParam(key, i == elementPosition ? element : params[indexes[i]]);
+            }
+        }
+        if (key.length() > template.estimatedLength) {
+            template.estimatedLength = key.length();
+        }
+        return key.toString();
+    }
+
+    private KeyTemplate getKeyTemplate(Method method, String keyPrefix) {
+        KeyTemplate template = keyTemplateCache.get(method);
+        // a method only carries one lock operation, so the prefix is the same on every call
+        if (template == null || !ObjectUtils.nullSafeEquals(template.keyPrefix, keyPrefix)) {
+            int[] indexes = getLockParamIndexes(method);
+            int multiParamIndex = getMultiParamIndex(method, indexes);
+            template = new KeyTemplate(keyPrefix, indexes, multiParamIndex,
+                    getHashTagPosition(method, indexes, multiParamIndex));
+            keyTemplateCache.put(method, template);
+        }
+        return template;
+    }
+
+    private int[] getLockParamIndexes(Method method) {
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        int[] indexes = new int[paramAnnotations.length];
+        int count = 0;
+        for (int i = 0; i < paramAnnotations.length; i++) {
+            for (Annotation annotation : paramAnnotations[i]) {
+                if (annotation.annotationType().isAssignableFrom(LockParam.class)) {
+                    indexes[count++] = i;
+                    break;
+                }
+            }
+        }
+        if (count == 0) {
             throw new IllegalStateException("method must have one parameter with @LockParam at least, " +
                     "or specify the key instead");
         }
-        List<String> lockParams = new ArrayList<>(lockParamIndex.size());
-        for (Integer index : lockParamIndex) {
-            Object param = params[index];
-            if (param == null) {
-                throw new IllegalArgumentException("param with @LockParam must be not null");
-            }
-            lockParams.add(param.toString());
-        }
-        String lockParamKey = StringUtils.collectionToDelimitedString(lockParams, ":");
-        return StringUtils.hasText(keyPrefix) ? keyPrefix + ":" + lockParamKey : lockParamKey;
-    }
-
-    private List<Integer> getLockParamIndex(Class<?> targetClass, Method method) {
-        MethodClassKey cacheKey = new MethodClassKey(method, targetClass);
-        List<Integer> index = lockParamIndexCache.get(cacheKey);
-        if (index == null) {
-            Annotation[][] paramAnnotations = method.getParameterAnnotations();
-            index = new ArrayList<>(paramAnnotations.length);
-            for (int i = 0; i < paramAnnotations.length; i++) {
-                Annotation[] annotations = paramAnnotations[i];
-                if (annotations.length == 0) {
-                    continue;
+        int[] result = new int[count];
+        System.arraycopy(indexes, 0, result, 0, count);
+        return result;
+    }
+
+    /**
+     * Return the position among the given indexes of the collection or array parameter, or -1.
+     */
+    private int getMultiParamIndex(Method method, int[] indexes) {
+        Class<?>[] paramTypes = method.getParameterTypes();
+        int multiParamIndex = -1;
+        for (int i = 0; i < indexes.length; i++) {
+            Class<?> paramType = paramTypes[indexes[i]];
+            if (paramType.isArray() || Collection.class.isAssignableFrom(paramType)) {
+                if (multiParamIndex >= 0) {
+                    throw new IllegalStateException("only one parameter with @LockParam may be a collection " +
+                            "or an array, method: " + method);
                 }
-                for (Annotation annotation : annotations) {
-                    if (annotation.annotationType().isAssignableFrom(LockParam.class)) {
-                        index.add(i);
-                        break;
+                multiParamIndex = i;
+            }
+        }
+        return multiParamIndex;
+    }
+
+    /**
+     * Return the position among the given indexes of the {@link LockParam#hashTag} parameter, or -1.
+     */
+    private int getHashTagPosition(Method method, int[] indexes, int multiParamIndex) {
+        Annotation[][] paramAnnotations = method.getParameterAnnotations();
+        int hashTagPosition = -1;
+        for (int i = 0; i < indexes.length; i++) {
+            for (Annotation annotation : paramAnnotations[indexes[i]]) {
+                if (annotation instanceof LockParam && ((LockParam) annotation).hashTag()) {
+                    if (hashTagPosition >= 0) {
+                        throw new IllegalStateException("only one parameter with @LockParam may be the hash tag, " +
+                                "method: " + method);
                     }
+                    hashTagPosition = i;
                 }
             }
-            lockParamIndexCache.put(cacheKey, index);
         }
-        return index;
+        if (hashTagPosition >= 0 && hashTagPosition == multiParamIndex) {
+            throw new IllegalStateException("the collection or array parameter with @LockParam can not be the " +
+                    "hash tag, the keys locked together would not share it, method: " + method);
+        }
+        return hashTagPosition;
+    }
+
+    private void appendParam(StringBuilder key, Object param) {
+        if (param == null) {
+            throw new IllegalArgumentException("param with @LockParam must be not null");
+        }
+        if (param instanceof String) {
+            key.append((String) param);
+        } else if (param instanceof Long || param instanceof Integer
+                || param instanceof Short || param instanceof Byte) {
+            key.append(((Number) param).longValue());
+        } else if (param instanceof UUID) {
+            appendUuid(key, (UUID) param);
+        } else if (param instanceof Character) {
+            key.append(((Character) param).charValue());
+        } else if (param instanceof Boolean) {
+            key.append(((Boolean) param).booleanValue());
+        } else {
+            key.append(param.toString());
+        }
+    }
+
+    /**
+     * Append the same representation as {@link UUID#toString()} without the intermediate string.
+     */
+    private void appendUuid(StringBuilder key, UUID uuid) {
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        appendHex(key, most >>> 32, 8);
+        key.append('-');
+        appendHex(key, most >>> 16, 4);
+        key.append('-');
+        appendHex(key, most, 4);
+        key.append('-');
+        appendHex(key, least >>> 48, 4);
+        key.append('-');
+        appendHex(key, least, 12);
+    }
+
+    private void appendHex(StringBuilder key, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            key.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    /**
+     * Precompiled key layout of a method.
+     */
+    private static final class KeyTemplate {
+
+        private final String keyPrefix;
+
+        // the prefix with the separator appended, or an empty string
+        private final String prefix;
+
+        private final int[] paramIndexes;
+
+        // position among the param indexes of the collection or array parameter, or -1
+        private final int multiParamIndex;
+
+        // position among the param indexes of the parameter enclosed in braces, or -1
+        private final int hashTagPosition;
+
+        private volatile int estimatedLength;
+
+        private KeyTemplate(String keyPrefix, int[] paramIndexes, int multiParamIndex, int hashTagPosition) {
+            this.keyPrefix = keyPrefix;
+            this.prefix = StringUtils.hasText(keyPrefix) ? keyPrefix + SEPARATOR : "";
+            this.paramIndexes = paramIndexes;
+            this.multiParamIndex = multiParamIndex;
+            this.hashTagPosition = hashTagPosition;
+            this.estimatedLength = this.prefix.length() + 16 * paramIndexes.length;
+        }
     }
 
 }
@@ -1,58 +1,954 @@
 package com.justz.lock.interceptor;
 
+import com.justz.lock.AsyncLockManager;
+import com.justz.lock.FencingLockManager;
 import com.justz.lock.LockManager;
+import com.justz.lock.MultiLockManager;
+import com.justz.lock.ReadWriteLockManager;
+import com.justz.lock.RetryStrategy;
+import com.justz.lock.RetryableLockManager;
+import com.justz.lock.SemaphoreLockManager;
+import com.justz.lock.enumeration.WaitMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.NestedRuntimeException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureCallback;
+import org.springframework.util.concurrent.ListenableFutureTask;
+import org.springframework.util.concurrent.SettableListenableFuture;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default lock manager. use {@link StringRedisTemplate} operate the lock key
  */
-public class SimpleLockManager implements LockManager {
+public class SimpleLockManager implements MultiLockManager, ReadWriteLockManager, SemaphoreLockManager,
+        AsyncLockManager, FencingLockManager, RetryableLockManager, InitializingBean, DisposableBean {
 
     private Logger logger = LoggerFactory.getLogger(SimpleLockManager.class);
 
-    // 占用锁的最大时间 单位 秒
-    private static final int LOCK_HOLD_MAX_SECONDS = 60;
-
-    // 线程休息时间 单位 毫秒
+    // 默认的线程休息时间 单位 毫秒
     private static final int LOCK_RETRY_INTERVAL = 50;
 
+    // 订阅释放通知时的兜底重试间隔 单位 毫秒, 用于通知丢失或锁过期的情况
+    private static final int LOCK_SUBSCRIBE_RETRY_INTERVAL = 500;
+
+    // 看门狗检查续期的间隔 单位 毫秒
+    private static final int LOCK_WATCHDOG_INTERVAL = 1000;
+
+    // 等待中的写锁阻止新读锁的时间 单位 毫秒, 写锁放弃等待后自动失效;
+    // 下次尝试前的等待时间更长时(如指数退避), 等待前按等待时间延长
+    private static final int WRITER_WAITING_EXPIRE = 2 * LOCK_SUBSCRIBE_RETRY_INTERVAL;
+
+    private static final String WRITER_WAITING_SUFFIX = ":writer-waiting";
+
+    // 等待释放通知的标记存活时间 单位 毫秒, 等待者至少每个订阅重试间隔刷新一次;
+    // 释放锁时只在标记存在时发布通知, 没有等待者的key不产生通知
+    private static final int WAITERS_EXPIRE = 3 * LOCK_SUBSCRIBE_RETRY_INTERVAL;
+
+    private static final String WAITERS_SUFFIX = ":waiters";
+
+    // 分发释放通知的线程数, 通知只唤醒等待者, 处理很快
+    private static final int LISTENER_THREADS = 2;
+
+    // 分发释放通知的队列长度, 队列满时由订阅线程直接分发
+    private static final int LISTENER_QUEUE_CAPACITY = 1024;
+
+    // 公平锁等待队列中的条目存活时间 单位 毫秒, 每次重试时刷新, 等待者意外退出后自动出队
+    private static final int FAIR_QUEUE_ENTRY_EXPIRE = 3 * LOCK_SUBSCRIBE_RETRY_INTERVAL;
+
+    private static final String FAIR_QUEUE_SUFFIX = ":queue";
+
+    private static final String FAIR_QUEUE_ENTRIES_SUFFIX = ":queue-entries";
+
+    // 防护令牌计数器, 保证同一个key的令牌单调递增
+    private static final String FENCE_SUFFIX = ":fence";
+
+    // 防护令牌计数器在key最后一次加锁后的存活时间 单位 毫秒, 每次加锁时刷新;
+    // 令牌不小于加锁时的微秒时间戳, 计数器过期后重新创建时令牌仍然递增
+    private static final long FENCE_EXPIRE = TimeUnit.DAYS.toMillis(7);
+
+    // 防护令牌附加在持有者标识之后, 作为锁的值
+    private static final char FENCE_SEPARATOR = '#';
+
     private StringRedisTemplate stringRedisTemplate;
 
+    // 节点标识, 与线程id及序号一起组成锁的持有者标识
+    private final String nodeId;
+
+    private final AtomicLong ownerSequence;
+
+    // 通过 withRetryStrategy 创建时为原始的 lock manager, 共享其异步调度线程
+    private final SimpleLockManager parent;
+
+    // redis 2.6.12 以下版本不支持 SET key value NX PX, 此时退回到 SETNX + PEXPIRE
+    private volatile boolean setWithOptionsSupported = true;
+
+    private WaitMode waitMode = WaitMode.POLL;
+
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 订阅连接的线程与分发释放通知的线程, 由本 lock manager 创建和关闭
+    private ExecutorService subscriptionExecutor;
+
+    private ExecutorService listenerExecutor;
+
+    private LockReleaseListener releaseListener;
+
+    private boolean watchdogEnabled;
+
+    private LockWatchdog watchdog;
+
+    // 异步加锁的调度线程, 首次使用时创建
+    private volatile ScheduledExecutorService asyncScheduler;
+
+    private RetryStrategy retryStrategy = new FixedRetryStrategy(LOCK_RETRY_INTERVAL);
+
+    // 持有中的锁的加锁时间, 释放时将持有时长反馈给 retryStrategy, 仅在其需要持有时长时记录
+    private final ConcurrentMap<String, Long> holdStarts = new ConcurrentHashMap<>(256);
+
     public SimpleLockManager(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.nodeId = UUID.randomUUID().toString();
+        this.ownerSequence = new AtomicLong();
+        this.parent = null;
+    }
+
+    private SimpleLockManager(SimpleLockManager parent, RetryStrategy retryStrategy) {
+        this.stringRedisTemplate = parent.stringRedisTemplate;
+        this.nodeId = parent.nodeId;
+        this.ownerSequence = parent.ownerSequence;
+        this.parent = parent;
+        this.setWithOptionsSupported = parent.setWithOptionsSupported;
+        this.waitMode = parent.waitMode;
+        this.releaseListener = parent.releaseListener;
+        this.watchdogEnabled = parent.watchdogEnabled;
+        this.watchdog = parent.watchdog;
+        this.retryStrategy = retryStrategy;
+    }
+
+    /**
+     * Set how a contended acquire waits for the lock. With {@link WaitMode#SUBSCRIBE}
+     * {@link #remove} publishes a release notification if a waiter marked the key, and waiters
+     * of this JVM are woken up through one shared subscription connection. With
+     * {@link WaitMode#FAIR} the waiters of an exclusive lock also queue in Redis, and
+     * {@link #remove} only wakes up the next one; multi-key locks and fencing tokens are then
+     * not supported.
+     */
+    public void setWaitMode(WaitMode waitMode) {
+        this.waitMode = waitMode;
+    }
+
+    /**
+     * Set how long a contended acquire waits between its attempts while polling. With
+     * {@link WaitMode#SUBSCRIBE} and {@link WaitMode#FAIR} it is only used when the key the
+     * attempt was blocked by is unknown, e.g. after a failed attempt. The default is a fixed
+     * interval of 50 milliseconds.
+     */
+    public void setRetryStrategy(RetryStrategy retryStrategy) {
+        this.retryStrategy = retryStrategy;
+    }
+
+    /**
+     * Return a view of this initialized manager using the given retry strategy, see
+     * {@link #setRetryStrategy}.
+     */
+    @Override
+    public LockManager withRetryStrategy(RetryStrategy retryStrategy) {
+        return new SimpleLockManager(this, retryStrategy);
+    }
+
+    /**
+     * Set whether the leases of the locks held by this manager are renewed until they are removed,
+     * so methods running longer than the lease keep their lock. The default is {@code false}.
+     */
+    public void setWatchdogEnabled(boolean watchdogEnabled) {
+        this.watchdogEnabled = watchdogEnabled;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        loadScripts();
+        if (watchdogEnabled) {
+            watchdog = new LockWatchdog(stringRedisTemplate, LOCK_WATCHDOG_INTERVAL);
+            watchdog.start();
+        }
+        if (waitMode == WaitMode.SUBSCRIBE || waitMode == WaitMode.FAIR) {
+            releaseListener = new LockReleaseListener(stringRedisTemplate.getStringSerializer());
+            listenerContainer = new RedisMessageListenerContainer();
+            listenerContainer.setConnectionFactory(stringRedisTemplate.getConnectionFactory());
+            // the default executor of the container starts a thread per message
+            subscriptionExecutor = Executors.newSingleThreadExecutor(
+                    daemonThreadFactory("redis-lock-subscription-"));
+            listenerExecutor = new ThreadPoolExecutor(LISTENER_THREADS, LISTENER_THREADS, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(LISTENER_QUEUE_CAPACITY),
+                    daemonThreadFactory("redis-lock-listener-"), new ThreadPoolExecutor.CallerRunsPolicy());
+            listenerContainer.setSubscriptionExecutor(subscriptionExecutor);
+            listenerContainer.setTaskExecutor(listenerExecutor);
+            listenerContainer.addMessageListener(releaseListener, new ChannelTopic(LockReleaseListener.RELEASE_CHANNEL));
+            if (waitMode == WaitMode.FAIR) {
+                listenerContainer.addMessageListener(releaseListener,
+                        new ChannelTopic(LockReleaseListener.HANDOVER_CHANNEL));
+            }
+            listenerContainer.afterPropertiesSet();
+            listenerContainer.start();
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+            subscriptionExecutor.shutdownNow();
+            listenerExecutor.shutdownNow();
+        }
+        if (asyncScheduler != null) {
+            asyncScheduler.shutdownNow();
+        }
+    }
+
+    public String lock(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        String token = newToken();
+        boolean acquired = acquire(key, maxWaitMillSeconds, exclusiveAttempt(key, token, leaseMillSeconds));
+        return completeExclusive(key, token, leaseMillSeconds, acquired);
+    }
+
+    /**
+     * Acquire the lock like {@link #lock(String, long, long)}, but with every attempt run on the
+     * scheduler of this manager. The next attempt is scheduled on a timer, or triggered by the
+     * release notification with {@link WaitMode#SUBSCRIBE} and {@link WaitMode#FAIR}.
+     */
+    @Override
+    public ListenableFuture<String> lockAsync(final String key, long maxWaitMillSeconds, final long leaseMillSeconds) {
+        final String token = newToken();
+        final SettableListenableFuture<String> result = new SettableListenableFuture<>();
+        acquireAsync(key, maxWaitMillSeconds, exclusiveAttempt(key, token, leaseMillSeconds)).addCallback(
+                new ListenableFutureCallback<Boolean>() {
+                    @Override
+                    public void onSuccess(Boolean acquired) {
+                        String owned = completeExclusive(key, token, leaseMillSeconds, acquired);
+                        // the caller cancelled in the meantime
+                        if (!result.set(owned) && owned != null) {
+                            remove(key, owned);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable ex) {
+                        result.setException(ex);
+                    }
+                });
+        return result;
+    }
+
+    @Override
+    public ListenableFuture<Void> removeAsync(final String key, final String token) {
+        ListenableFutureTask<Void> task = new ListenableFutureTask<>(new Callable<Void>() {
+            @Override
+            public Void call() {
+                remove(key, token);
+                return null;
+            }
+        });
+        getAsyncScheduler().execute(task);
+        return task;
+    }
+
+    /**
+     * Acquire the exclusive lock with a script incrementing the fencing counter kept next to
+     * the key in the same call. The fencing token is appended to the owner token, which is
+     * released and renewed like any other. Not supported with {@link WaitMode#FAIR}.
+     * <p>The counter expires 7 days after the last lock of its key, so the counters of keys
+     * which are no longer locked do not pile up. The tokens are never below the current time
+     * in microseconds, so they keep increasing when a counter is created again, as long as the
+     * clocks of the clients are not days apart.
+     */
+    @Override
+    public String lockFenced(final String key, long maxWaitMillSeconds, final long leaseMillSeconds) {
+        if (waitMode == WaitMode.FAIR) {
+            throw new IllegalStateException("fencing tokens are not supported with " + WaitMode.FAIR + " wait mode");
+        }
+        final String token = newToken();
+        final List<String> keys = Arrays.asList(key, companionKey(key, FENCE_SUFFIX));
+        final String fenceExpire = String.valueOf(FENCE_EXPIRE);
+        final String[] fencedToken = new String[1];
+        boolean acquired = acquire(key, maxWaitMillSeconds, new LockAttempt() {
+            @Override
+            public String tryAcquire() {
+                Long fence = stringRedisTemplate.execute(LockScripts.LOCK_FENCED, keys, token,
+                        String.valueOf(leaseMillSeconds), String.valueOf(System.currentTimeMillis() * 1000),
+                        fenceExpire);
+                if (fence == null || fence == 0) {
+                    return key;
+                }
+                fencedToken[0] = token + FENCE_SEPARATOR + fence;
+                return null;
+            }
+        });
+        if (!acquired) {
+            return null;
+        }
+        track(key, fencedToken[0], leaseMillSeconds);
+        return fencedToken[0];
+    }
+
+    @Override
+    public long getFencingToken(String token) {
+        int separator = token.lastIndexOf(FENCE_SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("not a fenced lock token: " + token);
+        }
+        return Long.parseLong(token.substring(separator + 1));
+    }
+
+    /**
+     * Return one attempt to acquire the exclusive lock. With {@link WaitMode#FAIR} the lock is
+     * acquired in the order of a waiting queue kept next to the key: a waiter enqueues its token
+     * on its first attempt and waits for the handover notification published to that token, so
+     * a release wakes up a single waiter whatever the length of the queue.
+     */
+    private LockAttempt exclusiveAttempt(final String key, final String token, final long leaseMillSeconds) {
+        if (waitMode != WaitMode.FAIR) {
+            return new LockAttempt() {
+                @Override
+                public String tryAcquire() {
+                    return tryLock(key, token, leaseMillSeconds) ? null : key;
+                }
+            };
+        }
+        final List<String> keys = fairLockKeys(key);
+        return new LockAttempt() {
+            @Override
+            boolean isHandover() {
+                return true;
+            }
+
+            @Override
+            public String tryAcquire() {
+                Long locked = stringRedisTemplate.execute(LockScripts.LOCK_FAIR, keys, token,
+                        String.valueOf(leaseMillSeconds), String.valueOf(System.currentTimeMillis()),
+                        String.valueOf(FAIR_QUEUE_ENTRY_EXPIRE));
+                // the handover is notified under the token of the waiter
+                return locked != null && locked == 1 ? null : token;
+            }
+        };
+    }
+
+    /**
+     * Track the acquired exclusive lock, or leave the waiting queue of a fair lock.
+     * @return the token if acquired, otherwise {@code null}
+     */
+    private String completeExclusive(String key, String token, long leaseMillSeconds, boolean acquired) {
+        if (!acquired) {
+            if (waitMode == WaitMode.FAIR) {
+                // leave the queue at once, otherwise the lock could be handed over to nobody
+                try {
+                    stringRedisTemplate.execute(LockScripts.CANCEL_FAIR, fairLockKeys(key), token,
+                            LockReleaseListener.HANDOVER_CHANNEL);
+                } catch (Exception exception) {
+                    logger.debug("leave lock queue failed, lockKey: {}", key, exception);
+                }
+            }
+            return null;
+        }
+        track(key, token, leaseMillSeconds);
+        return token;
+    }
+
+    /**
+     * Return the distinct given keys in their natural order, the same for the lock and its release.
+     */
+    private static List<String> sortedKeys(Collection<String> keys) {
+        return new ArrayList<>(new TreeSet<>(keys));
+    }
+
+    private List<String> fairLockKeys(String key) {
+        return Arrays.asList(key, companionKey(key, FAIR_QUEUE_SUFFIX), companionKey(key, FAIR_QUEUE_ENTRIES_SUFFIX));
+    }
+
+    /**
+     * Lock all the given keys or none of them with one script call per attempt. The keys are
+     * locked in their natural order, so that the rollback of a partial acquire is deterministic.
+     * Not supported with {@link WaitMode#FAIR}: the keys would be taken ahead of their queues,
+     * and a fair release only notifies the next queued waiter.
+     */
+    @Override
+    public String lock(Collection<String> keys, long maxWaitMillSeconds, final long leaseMillSeconds) {
+        if (waitMode == WaitMode.FAIR) {
+            throw new IllegalStateException("multi-key locks are not supported with " + WaitMode.FAIR + " wait mode");
+        }
+        final List<String> sortedKeys = sortedKeys(keys);
+        final String token = newToken();
+        boolean acquired = acquire(sortedKeys, maxWaitMillSeconds, new LockAttempt() {
+            @Override
+            public String tryAcquire() {
+                Long blocked = stringRedisTemplate.execute(LockScripts.LOCK_MULTI, sortedKeys, token,
+                        String.valueOf(leaseMillSeconds));
+                return blocked == null || blocked == 0 ? null : sortedKeys.get(blocked.intValue() - 1);
+            }
+        });
+        if (!acquired) {
+            return null;
+        }
+        for (String key : sortedKeys) {
+            track(key, token, leaseMillSeconds);
+        }
+        return token;
+    }
+
+    public void remove(String key, String token) {
+        untrack(key, token);
+        Long released;
+        if (waitMode == WaitMode.FAIR) {
+            released = stringRedisTemplate.execute(LockScripts.RELEASE_FAIR, fairLockKeys(key), token,
+                    LockReleaseListener.HANDOVER_CHANNEL, String.valueOf(System.currentTimeMillis()));
+        } else if (releaseListener == null) {
+            released = stringRedisTemplate.execute(LockScripts.RELEASE, Collections.singletonList(key), token);
+        } else {
+            released = stringRedisTemplate.execute(LockScripts.RELEASE, Arrays.asList(key, waitersKey(key)), token,
+                    LockReleaseListener.RELEASE_CHANNEL);
+        }
+        if (released == null || released == 0) {
+            logger.warn("lock already expired or owned by others when released, lockKey: {}", key);
+        }
+    }
+
+    @Override
+    public void remove(Collection<String> keys, String token) {
+        List<String> keyList = sortedKeys(keys);
+        for (String key : keyList) {
+            untrack(key, token);
+        }
+        Long released;
+        if (releaseListener == null) {
+            released = stringRedisTemplate.execute(LockScripts.RELEASE_MULTI, keyList, token);
+        } else {
+            // the lock keys followed by their waiter marks
+            List<String> scriptKeys = new ArrayList<>(keyList.size() * 2);
+            scriptKeys.addAll(keyList);
+            for (String key : keyList) {
+                scriptKeys.add(waitersKey(key));
+            }
+            released = stringRedisTemplate.execute(LockScripts.RELEASE_MULTI, scriptKeys, token,
+                    LockReleaseListener.RELEASE_CHANNEL);
+        }
+        if (released == null || released < keyList.size()) {
+            logger.warn("locks already expired or owned by others when released, lockKeys: {}", keyList);
+        }
+    }
+
+    /**
+     * Acquire a read lock, stored with the other readers in a hash under the key. New readers
+     * are refused while a writer waits, so writers are not starved by a stream of readers.
+     */
+    @Override
+    public String lockRead(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return lockReadWrite(LockScripts.LOCK_READ, key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public String lockWrite(String key, long maxWaitMillSeconds, long leaseMillSeconds) {
+        return lockReadWrite(LockScripts.LOCK_WRITE, key, maxWaitMillSeconds, leaseMillSeconds);
+    }
+
+    @Override
+    public void removeRead(String key, String token) {
+        remove(LockScripts.RELEASE_READ, key, token);
+    }
+
+    @Override
+    public void removeWrite(String key, String token) {
+        remove(LockScripts.RELEASE_WRITE, key, token);
+    }
+
+    /**
+     * Acquire a permit, stored with the other holders in a sorted set under the key, scored by
+     * the expiry time of their lease. The permits of dead holders are reaped by the next acquire,
+     * which relies on the clocks of the nodes sharing the key being roughly synchronized.
+     */
+    @Override
+    public String lockPermit(final String key, final int permits, long maxWaitMillSeconds,
+                             final long leaseMillSeconds) {
+        final List<String> keys = Collections.singletonList(key);
+        final String token = newToken();
+        boolean acquired = acquire(key, maxWaitMillSeconds, new LockAttempt() {
+            @Override
+            public String tryAcquire() {
+                Long locked = stringRedisTemplate.execute(LockScripts.LOCK_PERMIT, keys, token,
+                        String.valueOf(leaseMillSeconds), String.valueOf(permits),
+                        String.valueOf(System.currentTimeMillis()));
+                return locked != null && locked == 1 ? null : key;
+            }
+        });
+        if (!acquired) {
+            return null;
+        }
+        track(key, token, leaseMillSeconds);
+        return token;
+    }
+
+    @Override
+    public void removePermit(String key, String token) {
+        remove(LockScripts.RELEASE_PERMIT, key, token);
+    }
+
+    private String lockReadWrite(final RedisScript<Long> script, final String key, long maxWaitMillSeconds,
+                                 final long leaseMillSeconds) {
+        final List<String> keys = Arrays.asList(key, companionKey(key, WRITER_WAITING_SUFFIX));
+        final String token = newToken();
+        boolean acquired = acquire(key, maxWaitMillSeconds, new LockAttempt() {
+            @Override
+            public String tryAcquire() {
+                Long locked = stringRedisTemplate.execute(script, keys, token, String.valueOf(leaseMillSeconds),
+                        String.valueOf(WRITER_WAITING_EXPIRE));
+                return locked != null && locked == 1 ? null : key;
+            }
+
+            @Override
+            void beforeWait(long waitMillSeconds) {
+                // the mark of a waiting writer must outlive the wait, or readers would come back in
+                if (script == LockScripts.LOCK_WRITE && waitMillSeconds > WRITER_WAITING_EXPIRE / 2) {
+                    try {
+                        stringRedisTemplate.execute(LockScripts.RENEW, keys.subList(1, 2), token,
+                                String.valueOf(waitMillSeconds + WRITER_WAITING_EXPIRE),
+                                String.valueOf(System.currentTimeMillis()));
+                    } catch (Exception exception) {
+                        logger.debug("extend waiting writer mark failed, lockKey: {}", key, exception);
+                    }
+                }
+            }
+        });
+        if (!acquired) {
+            return null;
+        }
+        track(key, token, leaseMillSeconds);
+        return token;
+    }
+
+    private void remove(RedisScript<Long> script, String key, String token) {
+        untrack(key, token);
+        Long released = releaseListener == null
+                ? stringRedisTemplate.execute(script, Collections.singletonList(key), token)
+                : stringRedisTemplate.execute(script, Arrays.asList(key, waitersKey(key)), token,
+                        LockReleaseListener.RELEASE_CHANNEL);
+        if (released == null || released == 0) {
+            logger.warn("lock already expired or owned by others when released, lockKey: {}", key);
+        }
+    }
+
+    private void track(String key, String token, long leaseMillSeconds) {
+        if (retryStrategy.needsHoldTimes()) {
+            holdStarts.put(token + ' ' + key, System.currentTimeMillis());
+        }
+        if (watchdog != null) {
+            watchdog.track(key, token, leaseMillSeconds);
+        }
     }
 
-    public boolean lock(String key, long maxWaitMillSeconds) {
+    private void untrack(String key, String token) {
+        if (watchdog != null) {
+            watchdog.untrack(key, token);
+        }
+        if (retryStrategy.needsHoldTimes()) {
+            Long holdStart = holdStarts.remove(token + ' ' + key);
+            if (holdStart != null) {
+                retryStrategy.released(key, System.currentTimeMillis() - holdStart);
+            }
+        }
+    }
+
+    /**
+     * Return the key the given suffix derives from the given lock key, in the same Redis Cluster
+     * slot so that scripts can use both: the lock key followed by the suffix if it has a hash tag,
+     * otherwise the lock key enclosed in a hash tag.
+     */
+    static String companionKey(String key, String suffix) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key + suffix;
+            }
+        }
+        return "{" + key + "}" + suffix;
+    }
+
+    private static String waitersKey(String key) {
+        return companionKey(key, WAITERS_SUFFIX);
+    }
+
+    /**
+     * Mark the given key as waited for, so that its releases are published, unless the waiter
+     * is notified by a fair handover.
+     * @return the time of the mark
+     */
+    private long markWaiting(String key, LockAttempt attempt) {
         long now = System.currentTimeMillis();
-        while (System.currentTimeMillis() - now < maxWaitMillSeconds) {
+        if (!attempt.isHandover()) {
             try {
-                boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, "1");
-                if (success) {
-                    try {
-                        stringRedisTemplate.expire(key, LOCK_HOLD_MAX_SECONDS, TimeUnit.SECONDS);
+                stringRedisTemplate.opsForValue().set(waitersKey(key), nodeId, WAITERS_EXPIRE, TimeUnit.MILLISECONDS);
+            } catch (Exception exception) {
+                logger.debug("mark lock waited for failed, lockKey: {}", key, exception);
+            }
+        }
+        return now;
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory(String threadNamePrefix) {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(threadNamePrefix);
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    private String newToken() {
+        return nodeId + ":" + Thread.currentThread().getId() + ":" + ownerSequence.incrementAndGet();
+    }
+
+    /**
+     * Retry the given attempt until it succeeds or the max waiting time elapsed. Between attempts
+     * either sleeps, or with {@link WaitMode#SUBSCRIBE} waits for the release of the key the last
+     * attempt was blocked by.
+     * @param lockKeys the key(s) to acquire, for logging
+     * @return whether the attempt succeeded
+     */
+    private boolean acquire(Object lockKeys, long maxWaitMillSeconds, LockAttempt attempt) {
+        long start = System.currentTimeMillis();
+        String waitKey = null;
+        LockReleaseListener.Waiters waiters = null;
+        long markedAt = 0;
+        int failedAttempts = 0;
+        long delay = 0;
+        try {
+            while (true) {
+                long generation = waiters != null ? waiters.generation() : 0;
+                String blockingKey = null;
+                try {
+                    blockingKey = attempt.tryAcquire();
+                    if (blockingKey == null) {
                         return true;
-                    } catch (Exception exception) {
-                        logger.debug("set lock timeout failed, lockKey: {}", key, exception);
-                        try {
-                            stringRedisTemplate.delete(key);
-                        } catch (Exception ex) {
-                            logger.debug("remove lock failed", ex);
-                        }
                     }
+                } catch (Exception exception) {
+                    logger.debug("acquire lock failed，lockKey: {}", lockKeys, exception);
+                }
+                long remaining = maxWaitMillSeconds - (System.currentTimeMillis() - start);
+                if (remaining <= 0) {
+                    return false;
+                }
+                failedAttempts++;
+                if (releaseListener == null || blockingKey == null) {
+                    delay = retryStrategy.nextDelay(blockingKey != null ? blockingKey : String.valueOf(lockKeys),
+                            failedAttempts, delay);
+                    if (blockingKey != null) {
+                        attempt.beforeWait(Math.min(delay, remaining));
+                    }
+                    TimeUnit.MILLISECONDS.sleep(Math.min(delay, remaining));
+                } else if (!blockingKey.equals(waitKey)) {
+                    // register before the next attempt, so a release in between is not missed
+                    if (waiters != null) {
+                        releaseListener.unregister(waitKey, waiters);
+                    }
+                    waitKey = blockingKey;
+                    waiters = releaseListener.register(waitKey);
+                    markedAt = markWaiting(waitKey, attempt);
+                } else {
+                    if (System.currentTimeMillis() - markedAt >= LOCK_SUBSCRIBE_RETRY_INTERVAL) {
+                        markedAt = markWaiting(waitKey, attempt);
+                    }
+                    waiters.await(generation, Math.min(LOCK_SUBSCRIBE_RETRY_INTERVAL, remaining));
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            AcquireRetries.record(failedAttempts);
+            if (waiters != null) {
+                releaseListener.unregister(waitKey, waiters);
+            }
+        }
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #acquire}.
+     * @return a future completed with whether the attempt succeeded
+     */
+    private ListenableFuture<Boolean> acquireAsync(Object lockKeys, long maxWaitMillSeconds, LockAttempt attempt) {
+        AsyncAcquisition acquisition = new AsyncAcquisition(lockKeys,
+                System.currentTimeMillis() + maxWaitMillSeconds, attempt, getAsyncScheduler());
+        acquisition.scheduler.execute(acquisition);
+        return acquisition.result;
+    }
+
+    private ScheduledExecutorService getAsyncScheduler() {
+        if (parent != null) {
+            return parent.getAsyncScheduler();
+        }
+        ScheduledExecutorService scheduler = asyncScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                scheduler = asyncScheduler;
+                if (scheduler == null) {
+                    scheduler = Executors.newScheduledThreadPool(
+                            Runtime.getRuntime().availableProcessors(), daemonThreadFactory("redis-lock-async-"));
+                    asyncScheduler = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * Load the scripts in advance, so that the first release does not need a retry with the script body.
+     */
+    private void loadScripts() {
+        try {
+            LockScripts.load(stringRedisTemplate);
+        } catch (Exception exception) {
+            logger.warn("load lock scripts failed, they will be loaded on first use", exception);
+        }
+    }
+
+    /**
+     * Try to acquire the lock once. Uses a single atomic {@code SET key value NX PX lease}
+     * and falls back to {@code SETNX} + {@code PEXPIRE} on servers without SET options.
+     */
+    private boolean tryLock(String key, String token, long leaseMillSeconds) {
+        if (setWithOptionsSupported) {
+            try {
+                return setIfAbsent(key, token, leaseMillSeconds);
+            } catch (DataAccessException exception) {
+                if (!isSyntaxError(exception)) {
+                    throw exception;
+                }
+                logger.info("redis server does not support SET with NX/PX options, fall back to SETNX + PEXPIRE");
+                setWithOptionsSupported = false;
+            }
+        }
+        return setIfAbsentThenExpire(key, token, leaseMillSeconds);
+    }
+
+    private boolean setIfAbsent(final String key, final String token, final long leaseMillSeconds) {
+        final RedisSerializer<String> serializer = stringRedisTemplate.getStringSerializer();
+        Object reply = stringRedisTemplate.execute(new RedisCallback<Object>() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.execute("SET", serializer.serialize(key), serializer.serialize(token),
+                        serializer.serialize("NX"), serializer.serialize("PX"),
+                        serializer.serialize(String.valueOf(leaseMillSeconds)));
+            }
+        });
+        return reply != null;
+    }
+
+    private boolean setIfAbsentThenExpire(String key, String token, long leaseMillSeconds) {
+        Boolean success = stringRedisTemplate.opsForValue().setIfAbsent(key, token);
+        if (success == null || !success) {
+            return false;
+        }
+        try {
+            stringRedisTemplate.expire(key, leaseMillSeconds, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (Exception exception) {
+            logger.debug("set lock timeout failed, lockKey: {}", key, exception);
+            try {
+                stringRedisTemplate.delete(key);
+            } catch (Exception ex) {
+                logger.debug("remove lock failed", ex);
+            }
+            return false;
+        }
+    }
+
+    private boolean isSyntaxError(NestedRuntimeException exception) {
+        String message = exception.getMostSpecificCause().getMessage();
+        return message != null && message.contains("syntax error");
+    }
+
+    /**
+     * An acquire retried on the scheduler until it succeeds or the max waiting time elapsed.
+     * Each run makes one attempt and schedules the next one, which a release notification of
+     * the key the attempt was blocked by brings forward.
+     */
+    private final class AsyncAcquisition implements Runnable {
+
+        private final Object lockKeys;
+
+        private final long deadline;
+
+        private final LockAttempt attempt;
+
+        private final ScheduledExecutorService scheduler;
+
+        private final SettableListenableFuture<Boolean> result = new SettableListenableFuture<>();
+
+        private final Runnable wakeUp = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.execute(AsyncAcquisition.this);
+                } catch (RejectedExecutionException exception) {
+                    logger.debug("lock manager is shut down, lockKey: {}", lockKeys);
+                }
+            }
+        };
+
+        private String waitKey;
+
+        private LockReleaseListener.Waiters waiters;
+
+        private ScheduledFuture<?> nextAttempt;
+
+        private long markedAt;
+
+        private boolean done;
+
+        private int failedAttempts;
+
+        private long previousDelay;
+
+        private AsyncAcquisition(Object lockKeys, long deadline, LockAttempt attempt,
+                                 ScheduledExecutorService scheduler) {
+            this.lockKeys = lockKeys;
+            this.deadline = deadline;
+            this.attempt = attempt;
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void run() {
+            // completed outside of the monitor, the callbacks may run the locked method
+            Boolean acquired = attemptOnce();
+            if (acquired != null) {
+                result.set(acquired);
+            }
+        }
+
+        /**
+         * @return whether acquired, or {@code null} if another attempt is scheduled
+         */
+        private synchronized Boolean attemptOnce() {
+            if (done) {
+                return null;
+            }
+            if (nextAttempt != null) {
+                nextAttempt.cancel(false);
+                nextAttempt = null;
+            }
+            String blockingKey = null;
+            try {
+                blockingKey = attempt.tryAcquire();
+                if (blockingKey == null) {
+                    return finish(true);
                 }
-                TimeUnit.MILLISECONDS.sleep(LOCK_RETRY_INTERVAL);
             } catch (Exception exception) {
-                logger.debug("acquire lock failed，lockKey: {}", key, exception);
+                logger.debug("acquire lock failed，lockKey: {}", lockKeys, exception);
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return finish(false);
+            }
+            failedAttempts++;
+            long delay;
+            if (releaseListener == null || blockingKey == null) {
+                delay = retryStrategy.nextDelay(blockingKey != null ? blockingKey : String.valueOf(lockKeys),
+                        failedAttempts, previousDelay);
+                previousDelay = delay;
+            } else if (!blockingKey.equals(waitKey)) {
+                unwatch();
+                waitKey = blockingKey;
+                waiters = releaseListener.register(waitKey);
+                waiters.addCallback(wakeUp);
+                markedAt = markWaiting(waitKey, attempt);
+                // retry at once, so a release before the registration is not missed
+                delay = 0;
+            } else {
+                if (System.currentTimeMillis() - markedAt >= LOCK_SUBSCRIBE_RETRY_INTERVAL) {
+                    markedAt = markWaiting(waitKey, attempt);
+                }
+                delay = LOCK_SUBSCRIBE_RETRY_INTERVAL;
+            }
+            if (blockingKey != null) {
+                attempt.beforeWait(Math.min(delay, remaining));
+            }
+            try {
+                nextAttempt = scheduler.schedule(this, Math.min(delay, remaining), TimeUnit.MILLISECONDS);
+                return null;
+            } catch (RejectedExecutionException exception) {
+                logger.debug("lock manager is shut down, lockKey: {}", lockKeys);
+                return finish(false);
+            }
+        }
+
+        private Boolean finish(boolean acquired) {
+            done = true;
+            unwatch();
+            return acquired;
+        }
+
+        private void unwatch() {
+            if (waiters != null) {
+                waiters.removeCallback(wakeUp);
+                releaseListener.unregister(waitKey, waiters);
+                waiters = null;
             }
         }
-        return false;
     }
 
-    public void remove(String key) {
-        stringRedisTemplate.delete(key);
+    /**
+     * One attempt to acquire a lock.
+     */
+    private abstract static class LockAttempt {
+
+        /**
+         * @return {@code null} if acquired, otherwise the key held by others, or the token
+         * the handover is notified to if {@link #isHandover()}
+         */
+        public abstract String tryAcquire();
+
+        /**
+         * Called after an attempt blocked by others, before waiting the given time at most for
+         * the next one.
+         */
+        void beforeWait(long waitMillSeconds) {
+        }
+
+        /**
+         * Return whether the waiter is notified by a fair handover rather than by the release.
+         */
+        boolean isHandover() {
+            return false;
+        }
     }
 }
@@ -3,6 +3,7 @@ package com.justz.lock.interceptor;
 import com.justz.lock.annotation.Lock;
 import com.justz.lock.annotation.LockAnnotationParser;
 import com.justz.lock.annotation.LockConfig;
+import com.justz.lock.enumeration.LockMode;
 import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.util.StringUtils;
 
@@ -48,8 +49,16 @@ public class SpringLockAnnotationParser implements LockAnnotationParser, Seriali
         config.setPrefix(lock.prefix());
         config.setKeyGenerator(lock.keyGenerator());
         config.setLockManager(lock.lockManager());
+        config.setRetryStrategy(lock.retryStrategy());
         config.setMaxWaitMillSeconds(lock.maxWaitMillSeconds());
+        config.setLeaseMillSeconds(lock.leaseMillSeconds());
         config.setActionAfterAcquireFailed(lock.actionAfterAcquireFailed());
+        config.setMode(lock.mode());
+        config.setPermits(lock.permits());
+        config.setFencing(lock.fencing());
+        config.setSingleFlight(lock.singleFlight());
+        config.setResultTtlMillSeconds(lock.resultTtlMillSeconds());
+        config.setIdempotent(lock.idempotent());
 
         defaultConfig.applyDefault(config);
 
@@ -60,7 +69,8 @@ public class SpringLockAnnotationParser implements LockAnnotationParser, Seriali
     DefaultLockConfig getDefaultLockConfig(Class<?> target) {
         LockConfig annotation = AnnotatedElementUtils.getMergedAnnotation(target, LockConfig.class);
         if (annotation != null) {
-            return new DefaultLockConfig(annotation.keyGenerator(), annotation.lockManager());
+            return new DefaultLockConfig(annotation.keyGenerator(), annotation.lockManager(),
+                    annotation.retryStrategy());
         }
         return new DefaultLockConfig();
     }
@@ -72,6 +82,36 @@ public class SpringLockAnnotationParser implements LockAnnotationParser, Seriali
                     "These attributes are mutually exclusive: either set the SpEL expression used to" +
                     "compute the key at runtime or set the name of the KeyGenerator bean to use.");
         }
+        if (config.getLeaseMillSeconds() < 0) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'leaseMillSeconds' must not be negative.");
+        }
+        if (config.getPermits() < 1) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'permits' must be greater than 0.");
+        }
+        if (config.getPermits() > 1 && config.getMode() != LockMode.EXCLUSIVE) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'permits' greater than 1 is only supported in the " +
+                    LockMode.EXCLUSIVE + " mode.");
+        }
+        if (config.isFencing() && (config.getPermits() > 1 || config.getMode() != LockMode.EXCLUSIVE)) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'fencing' is only supported in the " + LockMode.EXCLUSIVE +
+                    " mode with 1 permit.");
+        }
+        if (config.getResultTtlMillSeconds() < 0) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'resultTtlMillSeconds' must not be negative.");
+        }
+        if (config.getResultTtlMillSeconds() > 0 && !config.isSingleFlight() && !config.isIdempotent()) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'resultTtlMillSeconds' requires 'singleFlight' or 'idempotent'.");
+        }
+        if (config.isIdempotent() && config.getResultTtlMillSeconds() == 0) {
+            throw new IllegalStateException("Invalid lock annotation configuration on '" +
+                    ae.toString() + "'. 'idempotent' requires a positive 'resultTtlMillSeconds'.");
+        }
     }
 
     static class DefaultLockConfig {
@@ -80,13 +120,16 @@ public class SpringLockAnnotationParser implements LockAnnotationParser, Seriali
 
         private final String lockManager;
 
+        private final String retryStrategy;
+
         DefaultLockConfig() {
-            this(null, null);
+            this(null, null, null);
         }
 
-        private DefaultLockConfig(String keyGenerator, String lockManager) {
+        private DefaultLockConfig(String keyGenerator, String lockManager, String retryStrategy) {
             this.keyGenerator = keyGenerator;
             this.lockManager = lockManager;
+            this.retryStrategy = retryStrategy;
         }
 
         void applyDefault(LockOperationConfig config) {
@@ -97,6 +140,9 @@ public class SpringLockAnnotationParser implements LockAnnotationParser, Seriali
             if (!StringUtils.hasText(config.getLockManager()) && StringUtils.hasText(this.lockManager)) {
                 config.setLockManager(this.lockManager);
             }
+            if (!StringUtils.hasText(config.getRetryStrategy()) && StringUtils.hasText(this.retryStrategy)) {
+                config.setRetryStrategy(this.retryStrategy);
+            }
         }
     }
 
@@ -0,0 +1,21 @@
+-- KEYS[1]: lock key
+-- KEYS[2]: waiting queue, a list of waiter tokens
+-- KEYS[3]: waiting queue entries, the waiter tokens scored by the expiry time of their entry
+-- ARGV[1]: waiter token
+-- ARGV[2]: handover notification channel
+if redis.call('zrem', KEYS[3], ARGV[1]) == 0 then
+    return 0
+end
+if redis.call('lindex', KEYS[2], 0) ~= ARGV[1] then
+    redis.call('lrem', KEYS[2], 1, ARGV[1])
+    return 1
+end
+redis.call('lpop', KEYS[2])
+-- the lock may have been handed over to the leaving waiter, pass it on
+if redis.call('exists', KEYS[1]) == 0 then
+    local head = redis.call('lindex', KEYS[2], 0)
+    if head then
+        redis.call('publish', ARGV[2], head)
+    end
+end
+return 1
@@ -0,0 +1,39 @@
+-- KEYS[1]: lock key
+-- KEYS[2]: waiting queue, a list of waiter tokens
+-- KEYS[3]: waiting queue entries, the waiter tokens scored by the expiry time of their entry
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- ARGV[3]: current time in milliseconds
+-- ARGV[4]: time to live of a queue entry in milliseconds, refreshed by every attempt of the waiter
+local now = tonumber(ARGV[3])
+-- drop the waiters at the head which gave up without leaving the queue
+while true do
+    local head = redis.call('lindex', KEYS[2], 0)
+    if not head then
+        break
+    end
+    local expiry = redis.call('zscore', KEYS[3], head)
+    if expiry and tonumber(expiry) > now then
+        break
+    end
+    redis.call('lpop', KEYS[2])
+    redis.call('zrem', KEYS[3], head)
+end
+if redis.call('exists', KEYS[1]) == 0 then
+    local head = redis.call('lindex', KEYS[2], 0)
+    if not head or head == ARGV[1] then
+        if head then
+            redis.call('lpop', KEYS[2])
+            redis.call('zrem', KEYS[3], head)
+        end
+        redis.call('set', KEYS[1], ARGV[1], 'PX', ARGV[2])
+        return 1
+    end
+end
+-- enqueue on the first attempt, only refresh the entry on the next ones
+if redis.call('zadd', KEYS[3], now + tonumber(ARGV[4]), ARGV[1]) == 1 then
+    redis.call('rpush', KEYS[2], ARGV[1])
+end
+redis.call('pexpire', KEYS[2], ARGV[4])
+redis.call('pexpire', KEYS[3], ARGV[4])
+return 0
@@ -0,0 +1,17 @@
+-- KEYS[1]: lock key
+-- KEYS[2]: fencing counter of the key
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- ARGV[3]: lowest fencing token, the current time in microseconds
+-- ARGV[4]: time in milliseconds after which the counter of a key no longer locked expires
+if redis.call('exists', KEYS[1]) == 1 then
+    return 0
+end
+-- never below the time, so the tokens keep increasing after the counter expired
+local fence = math.max((tonumber(redis.call('get', KEYS[2])) or 0) + 1, tonumber(ARGV[3]))
+-- formatted as an integer, tostring would use the exponent notation past 14 digits
+fence = string.format('%.0f', fence)
+redis.call('set', KEYS[2], fence, 'PX', ARGV[4])
+-- the fencing token is kept in the value, so the owner token releases and renews the lock as usual
+redis.call('set', KEYS[1], ARGV[1] .. '#' .. fence, 'PX', ARGV[2])
+return tonumber(fence)
@@ -0,0 +1,13 @@
+-- KEYS: lock keys, in canonical order
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- returns 0 if all keys were locked, otherwise the index of the first key held by others
+for i, key in ipairs(KEYS) do
+    if not redis.call('set', key, ARGV[1], 'NX', 'PX', ARGV[2]) then
+        for j = 1, i - 1 do
+            redis.call('del', KEYS[j])
+        end
+        return i
+    end
+end
+return 0
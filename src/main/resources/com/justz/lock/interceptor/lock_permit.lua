@@ -0,0 +1,16 @@
+-- KEYS[1]: semaphore sorted set, the holder tokens scored by the expiry time of their lease
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- ARGV[3]: number of permits
+-- ARGV[4]: current time in milliseconds
+local now = tonumber(ARGV[4])
+-- reap the permits of holders which died without releasing them
+redis.call('zremrangebyscore', KEYS[1], '-inf', now)
+if redis.call('zcard', KEYS[1]) >= tonumber(ARGV[3]) then
+    return 0
+end
+redis.call('zadd', KEYS[1], now + tonumber(ARGV[2]), ARGV[1])
+if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 1
@@ -0,0 +1,13 @@
+-- KEYS[1]: read/write lock hash, the 'writer' field holds the writer token, other fields the reader tokens
+-- KEYS[2]: waiting writer key
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- new readers are refused while a writer holds the lock or waits for it
+if redis.call('hexists', KEYS[1], 'writer') == 1 or redis.call('exists', KEYS[2]) == 1 then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[1], 1)
+if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then
+    redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 1
@@ -0,0 +1,17 @@
+-- KEYS[1]: read/write lock hash, the 'writer' field holds the writer token, other fields the reader tokens
+-- KEYS[2]: waiting writer key
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- ARGV[3]: time in milliseconds the waiting writer keeps new readers out
+-- a free lock goes to any writer, the waiting one may have given up
+if redis.call('exists', KEYS[1]) == 0 then
+    redis.call('hset', KEYS[1], 'writer', ARGV[1])
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    redis.call('del', KEYS[2])
+    return 1
+end
+local waiting = redis.call('get', KEYS[2])
+if not waiting or waiting == ARGV[1] then
+    redis.call('set', KEYS[2], ARGV[1], 'PX', ARGV[3])
+end
+return 0
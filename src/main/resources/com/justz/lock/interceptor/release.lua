@@ -0,0 +1,13 @@
+-- KEYS[1]: lock key
+-- KEYS[2]: mark of the waiters of the lock key, with a release notification channel
+-- ARGV[1]: owner token
+-- ARGV[2]: release notification channel, optional
+if redis.call('get', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('del', KEYS[1])
+-- only published while someone waits for the key
+if ARGV[2] and redis.call('exists', KEYS[2]) == 1 then
+    redis.call('publish', ARGV[2], KEYS[1])
+end
+return 1
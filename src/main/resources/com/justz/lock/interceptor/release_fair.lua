@@ -0,0 +1,26 @@
+-- KEYS[1]: lock key
+-- KEYS[2]: waiting queue, a list of waiter tokens
+-- KEYS[3]: waiting queue entries, the waiter tokens scored by the expiry time of their entry
+-- ARGV[1]: owner token
+-- ARGV[2]: handover notification channel
+-- ARGV[3]: current time in milliseconds
+if redis.call('get', KEYS[1]) ~= ARGV[1] then
+    return 0
+end
+redis.call('del', KEYS[1])
+local now = tonumber(ARGV[3])
+while true do
+    local head = redis.call('lindex', KEYS[2], 0)
+    if not head then
+        break
+    end
+    local expiry = redis.call('zscore', KEYS[3], head)
+    if expiry and tonumber(expiry) > now then
+        -- only the next waiter is woken up
+        redis.call('publish', ARGV[2], head)
+        break
+    end
+    redis.call('lpop', KEYS[2])
+    redis.call('zrem', KEYS[3], head)
+end
+return 1
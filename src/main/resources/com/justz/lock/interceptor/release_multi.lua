@@ -0,0 +1,18 @@
+-- KEYS: lock keys, followed by the marks of their waiters with a release notification channel
+-- ARGV[1]: owner token
+-- ARGV[2]: release notification channel, optional
+-- returns the number of keys released
+local count = ARGV[2] and #KEYS / 2 or #KEYS
+local released = 0
+for i = 1, count do
+    local key = KEYS[i]
+    if redis.call('get', key) == ARGV[1] then
+        redis.call('del', key)
+        -- only published while someone waits for the key
+        if ARGV[2] and redis.call('exists', KEYS[count + i]) == 1 then
+            redis.call('publish', ARGV[2], key)
+        end
+        released = released + 1
+    end
+end
+return released
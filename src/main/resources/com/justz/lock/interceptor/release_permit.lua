@@ -0,0 +1,12 @@
+-- KEYS[1]: semaphore sorted set
+-- KEYS[2]: mark of the waiters of the semaphore, with a release notification channel
+-- ARGV[1]: owner token
+-- ARGV[2]: release notification channel, optional
+if redis.call('zrem', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+-- only published while someone waits for a permit
+if ARGV[2] and redis.call('exists', KEYS[2]) == 1 then
+    redis.call('publish', ARGV[2], KEYS[1])
+end
+return 1
@@ -0,0 +1,15 @@
+-- KEYS[1]: read/write lock hash
+-- KEYS[2]: mark of the waiters of the lock, with a release notification channel
+-- ARGV[1]: owner token
+-- ARGV[2]: release notification channel, optional
+if redis.call('hdel', KEYS[1], ARGV[1]) == 0 then
+    return 0
+end
+if redis.call('hlen', KEYS[1]) == 0 then
+    redis.call('del', KEYS[1])
+    -- only published while someone waits for the lock
+    if ARGV[2] and redis.call('exists', KEYS[2]) == 1 then
+        redis.call('publish', ARGV[2], KEYS[1])
+    end
+end
+return 1
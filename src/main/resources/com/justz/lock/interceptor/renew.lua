@@ -0,0 +1,26 @@
+-- KEYS[1]: lock key, a string, a read/write lock hash or a semaphore sorted set
+-- ARGV[1]: owner token
+-- ARGV[2]: lease in milliseconds
+-- ARGV[3]: current time in milliseconds
+local keyType = redis.call('type', KEYS[1]).ok
+if keyType == 'string' then
+    if redis.call('get', KEYS[1]) ~= ARGV[1] then
+        return 0
+    end
+elseif keyType == 'hash' then
+    if redis.call('hget', KEYS[1], 'writer') ~= ARGV[1] and redis.call('hexists', KEYS[1], ARGV[1]) == 0 then
+        return 0
+    end
+elseif keyType == 'zset' then
+    if not redis.call('zscore', KEYS[1], ARGV[1]) then
+        return 0
+    end
+    redis.call('zadd', KEYS[1], tonumber(ARGV[3]) + tonumber(ARGV[2]), ARGV[1])
+    -- other permits may expire later
+    if redis.call('pttl', KEYS[1]) >= tonumber(ARGV[2]) then
+        return 1
+    end
+else
+    return 0
+end
+return redis.call('pexpire', KEYS[1], ARGV[2])
@@ -0,0 +1,39 @@
+package com.justz.lock.interceptor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveRetryStrategyTest {
+
+    @Test
+    public void delayFollowsHoldTimes() {
+        AdaptiveRetryStrategy retryStrategy = new AdaptiveRetryStrategy(50, 1, 10000, 10);
+        for (int i = 0; i < 50; i++) {
+            retryStrategy.released("order:1", 2000);
+        }
+        // half of the average hold time, with a jitter of +-50%
+        assertDelayBetween(retryStrategy, "order:1", 500, 1500);
+        assertDelayBetween(retryStrategy, "order:2", 25, 75);
+    }
+
+    @Test
+    public void leastRecentlyUsedKeysAreForgotten() {
+        AdaptiveRetryStrategy retryStrategy = new AdaptiveRetryStrategy(50, 1, 10000, 2);
+        retryStrategy.released("order:1", 2000);
+        retryStrategy.released("order:2", 2000);
+        retryStrategy.nextDelay("order:1", 1, 0);
+        retryStrategy.released("order:3", 2000);
+
+        assertDelayBetween(retryStrategy, "order:1", 500, 1500);
+        assertDelayBetween(retryStrategy, "order:2", 25, 75);
+        assertDelayBetween(retryStrategy, "order:3", 500, 1500);
+    }
+
+    private static void assertDelayBetween(AdaptiveRetryStrategy retryStrategy, String key, long min, long max) {
+        for (int i = 0; i < 100; i++) {
+            long delay = retryStrategy.nextDelay(key, 1, 0);
+            assertTrue(key + " retried after " + delay + "ms", delay >= min && delay <= max);
+        }
+    }
+}
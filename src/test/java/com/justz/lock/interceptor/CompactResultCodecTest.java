@@ -0,0 +1,118 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.enumeration.ActionType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactResultCodecTest {
+
+    private final CompactResultCodec codec = new CompactResultCodec();
+
+    @Test
+    public void scalarsRoundTrip() {
+        Object[] values = {null, true, false, (byte) -7, (short) 300, 'z', 0, -1, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, 1.5f, -0.25d, Double.NaN, "", "订单 order",
+                new BigInteger("-123456789012345678901234567890"), new BigDecimal("-1234.5678"),
+                new Date(1500000000000L), ActionType.RETURN_NULL};
+        for (Object value : values) {
+            Object decoded = roundTrip(value);
+            assertEquals(value, decoded);
+            if (value != null) {
+                assertEquals(value.getClass(), decoded.getClass());
+            }
+        }
+        assertArrayEquals(new byte[] {1, -2, 3}, (byte[]) roundTrip(new byte[] {1, -2, 3}));
+    }
+
+    @Test
+    public void collectionsRoundTripToTheSameTypes() {
+        Map<String, Object> order = new LinkedHashMap<>();
+        order.put("id", 123L);
+        order.put("items", new ArrayList<Object>(Arrays.asList("a", 1, null)));
+        order.put("tags", new LinkedHashSet<Object>(Arrays.asList("x", "y")));
+        order.put("amounts", new HashMap<Object, Object>(Collections.singletonMap("total", new BigDecimal("9.99"))));
+        order.put("flags", new HashSet<Object>(Arrays.asList(true)));
+
+        Object decoded = roundTrip(order);
+        assertEquals(order, decoded);
+        assertEquals(LinkedHashMap.class, decoded.getClass());
+        assertEquals(new ArrayList<>(order.keySet()), new ArrayList<>(((Map<?, ?>) decoded).keySet()));
+        for (Map.Entry<String, Object> entry : order.entrySet()) {
+            assertEquals(entry.getValue().getClass(), ((Map<?, ?>) decoded).get(entry.getKey()).getClass());
+        }
+    }
+
+    @Test
+    public void smallValuesAreCompact() {
+        assertEquals(2, codec.encode(63L).length);
+        assertEquals(7, codec.encode("order").length);
+    }
+
+    @Test
+    public void unsupportedTypeIsRejectedWithoutFallback() {
+        try {
+            codec.encode(new AtomicLong(1));
+            fail("encoded an unsupported type");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains(AtomicLong.class.getName()));
+        }
+    }
+
+    @Test
+    public void fallbackIsUsedOnceSet() {
+        CompactResultCodec fallbackCodec = new CompactResultCodec();
+        fallbackCodec.setFallbackCodec(new JdkResultCodec());
+        byte[] bytes = fallbackCodec.encode(Arrays.asList(new AtomicLong(5)));
+
+        AtomicLong decoded = (AtomicLong) ((List<?>) fallbackCodec.decode(bytes)).get(0);
+        assertEquals(5, decoded.get());
+        // a codec without fallback does not decode what another one stored through its fallback
+        try {
+            codec.decode(bytes);
+            fail("decoded a fallback value without fallback codec");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void malformedInputIsRejected() {
+        byte[] bytes = codec.encode(new ArrayList<Object>(Arrays.asList("order", 123L)));
+        for (int length = 0; length < bytes.length; length++) {
+            assertRejected(Arrays.copyOf(bytes, length));
+        }
+        assertRejected(Arrays.copyOf(bytes, bytes.length + 1));
+        assertRejected(new byte[] {99});
+        // a length larger than the remaining bytes
+        assertRejected(new byte[] {16, 0x7e});
+    }
+
+    private Object roundTrip(Object value) {
+        return codec.decode(codec.encode(value));
+    }
+
+    private void assertRejected(byte[] bytes) {
+        try {
+            codec.decode(bytes);
+            fail("decoded malformed input " + Arrays.toString(bytes));
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
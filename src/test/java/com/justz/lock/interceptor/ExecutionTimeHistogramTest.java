@@ -0,0 +1,73 @@
+package com.justz.lock.interceptor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionTimeHistogramTest {
+
+    @Test
+    public void tooFewSamples() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram();
+        assertEquals(-1, histogram.percentile(0.99, 0));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(10);
+        }
+        assertEquals(-1, histogram.percentile(0.99, 100));
+        histogram.record(10);
+        assertTrue(histogram.percentile(0.99, 100) >= 10);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram();
+        for (int i = 0; i < 4; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1, histogram.percentile(0.5, 1));
+        assertEquals(3, histogram.percentile(1, 1));
+    }
+
+    @Test
+    public void percentileIsUpperBoundWithin25Percent() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertBound(500, histogram.percentile(0.5, 1));
+        assertBound(900, histogram.percentile(0.9, 1));
+        assertBound(999, histogram.percentile(0.999, 1));
+        assertBound(1000, histogram.percentile(1, 1));
+    }
+
+    @Test
+    public void outOfRangeValuesAreClamped() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram();
+        histogram.record(-5);
+        assertEquals(0, histogram.percentile(1, 1));
+
+        histogram.record(Long.MAX_VALUE);
+        assertTrue(histogram.percentile(1, 1) >= 1L << 40);
+    }
+
+    @Test
+    public void oldSamplesAreHalvedAwayOnceWindowIsFull() {
+        ExecutionTimeHistogram histogram = new ExecutionTimeHistogram();
+        for (int i = 0; i < 8192; i++) {
+            histogram.record(10);
+        }
+        assertBound(10, histogram.percentile(0.5, 1));
+
+        // without halving the 8192 samples of 10ms would still be the median
+        for (int i = 0; i < 5000; i++) {
+            histogram.record(1000);
+        }
+        assertBound(1000, histogram.percentile(0.5, 1));
+    }
+
+    private static void assertBound(long expected, long bound) {
+        assertTrue("bound " + bound + " of " + expected, bound >= expected && bound <= expected * 5 / 4);
+    }
+}
@@ -0,0 +1,218 @@
+package com.justz.lock.interceptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.justz.lock.LockManager;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryLockManagerTest {
+
+    private InMemoryLockManager lockManager;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        lockManager = new InMemoryLockManager();
+        lockManager.afterPropertiesSet();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        lockManager.destroy();
+    }
+
+    @Test
+    public void heldLockExcludesOthersUntilRemoved() {
+        String token = lockManager.lock("order:1", 0, 10000);
+        assertNotNull(token);
+        assertNull(lockManager.lock("order:1", 0, 10000));
+        assertNotNull(lockManager.lock("order:2", 0, 10000));
+
+        lockManager.remove("order:1", token);
+        assertNotNull(lockManager.lock("order:1", 0, 10000));
+    }
+
+    @Test
+    public void expiredLeaseIsTakenOver() throws InterruptedException {
+        String expired = lockManager.lock("order:1", 0, 50);
+        assertNotNull(expired);
+        assertNull(lockManager.lock("order:1", 0, 10000));
+
+        Thread.sleep(100);
+        String token = lockManager.lock("order:1", 0, 10000);
+        assertNotNull(token);
+        assertFalse(token.equals(expired));
+
+        // the expired owner must not release the lock of the new one
+        lockManager.remove("order:1", expired);
+        assertNull(lockManager.lock("order:1", 0, 10000));
+    }
+
+    @Test
+    public void waiterAcquiresAtLeaseExpiry() {
+        assertNotNull(lockManager.lock("order:1", 0, 200));
+
+        long start = System.nanoTime();
+        assertNotNull(lockManager.lock("order:1", 5000, 10000));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waited + "ms", waited >= 150 && waited < 2000);
+    }
+
+    @Test
+    public void acquireTimesOutAfterMaxWait() {
+        assertNotNull(lockManager.lock("order:1", 0, 10000));
+
+        long start = System.nanoTime();
+        assertNull(lockManager.lock("order:1", 200, 10000));
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("waited " + waited + "ms", waited >= 190 && waited < 2000);
+    }
+
+    @Test
+    public void waiterIsWokenUpByRemove() throws Exception {
+        final String token = lockManager.lock("order:1", 0, 10000);
+        Future<String> waiter = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return lockManager.lock("order:1", 5000, 10000);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+
+        long start = System.nanoTime();
+        lockManager.remove("order:1", token);
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+    }
+
+    @Test
+    public void multiKeyLockIsAllOrNothing() {
+        String held = lockManager.lock("order:2", 0, 10000);
+
+        assertNull(lockManager.lock(Arrays.asList("order:1", "order:2", "order:3"), 0, 10000));
+        // the keys locked before the one held by others were rolled back
+        String token = lockManager.lock("order:1", 0, 10000);
+        assertNotNull(token);
+        lockManager.remove("order:1", token);
+
+        lockManager.remove("order:2", held);
+        String multiToken = lockManager.lock(Arrays.asList("order:3", "order:1", "order:2"), 0, 10000);
+        assertNotNull(multiToken);
+        assertNull(lockManager.lock("order:1", 0, 10000));
+        assertNull(lockManager.lock("order:2", 0, 10000));
+        assertNull(lockManager.lock("order:3", 0, 10000));
+
+        lockManager.remove(Arrays.asList("order:1", "order:2", "order:3"), multiToken);
+        assertNotNull(lockManager.lock(Arrays.asList("order:1", "order:2", "order:3"), 0, 10000));
+    }
+
+    @Test
+    public void multiKeyLockWaitsForAllKeys() throws Exception {
+        final String held = lockManager.lock("order:2", 0, 10000);
+        Future<String> waiter = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return lockManager.lock(Arrays.asList("order:1", "order:2"), 5000, 10000);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiter.isDone());
+        // the waiter does not keep the key it could lock while it waits for the other one
+        String token = lockManager.lock("order:1", 0, 10000);
+        assertNotNull(token);
+        lockManager.remove("order:1", token);
+
+        lockManager.remove("order:2", held);
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertNull(lockManager.lock("order:1", 0, 10000));
+    }
+
+    @Test
+    public void duplicateKeysAreLockedOnce() {
+        String token = lockManager.lock(Arrays.asList("order:1", "order:1"), 0, 10000);
+        assertNotNull(token);
+
+        lockManager.remove(Arrays.asList("order:1", "order:1"), token);
+        assertNotNull(lockManager.lock("order:1", 0, 10000));
+    }
+
+    @Test
+    public void readersShareTheKeyWithoutWriters() {
+        String reader = lockManager.lockRead("order:1", 0, 10000);
+        assertNotNull(reader);
+        String otherReader = lockManager.lockRead("order:1", 0, 10000);
+        assertNotNull(otherReader);
+        assertNull(lockManager.lockWrite("order:1", 0, 10000));
+
+        lockManager.removeRead("order:1", reader);
+        assertNull(lockManager.lockWrite("order:1", 0, 10000));
+        lockManager.removeRead("order:1", otherReader);
+        String writer = lockManager.lockWrite("order:1", 0, 10000);
+        assertNotNull(writer);
+        assertNull(lockManager.lockRead("order:1", 0, 10000));
+
+        lockManager.removeWrite("order:1", writer);
+        assertNotNull(lockManager.lockRead("order:1", 0, 10000));
+    }
+
+    @Test
+    public void permitsLimitTheHolders() {
+        String first = lockManager.lockPermit("order:1", 2, 0, 10000);
+        assertNotNull(first);
+        assertNotNull(lockManager.lockPermit("order:1", 2, 0, 10000));
+        assertNull(lockManager.lockPermit("order:1", 2, 0, 10000));
+
+        lockManager.removePermit("order:1", first);
+        assertNotNull(lockManager.lockPermit("order:1", 2, 0, 10000));
+    }
+
+    @Test
+    public void fencingTokensIncreaseWithEachHolder() throws InterruptedException {
+        String expired = lockManager.lockFenced("order:1", 0, 50);
+        Thread.sleep(100);
+        String token = lockManager.lockFenced("order:1", 0, 10000);
+        assertNotNull(token);
+        assertTrue(lockManager.getFencingToken(token) > lockManager.getFencingToken(expired));
+    }
+
+    @Test
+    public void asyncAcquireCompletesAtRelease() throws Exception {
+        String token = lockManager.lock("order:1", 0, 10000);
+        ListenableFuture<String> waiter = lockManager.lockAsync("order:1", 5000, 10000);
+        assertFalse(waiter.isDone());
+
+        lockManager.remove("order:1", token);
+        assertNotNull(waiter.get(5, TimeUnit.SECONDS));
+        assertNull(lockManager.lock("order:1", 0, 10000));
+        assertNull(lockManager.lockAsync("order:1", 100, 10000).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void retryStrategyViewSharesTheLocks() {
+        LockManager view = lockManager.withRetryStrategy(new FixedRetryStrategy(10));
+        String token = view.lock("order:1", 0, 10000);
+        assertNotNull(token);
+        assertNull(lockManager.lock("order:1", 0, 10000));
+
+        lockManager.remove("order:1", token);
+        assertNotNull(view.lock("order:1", 0, 10000));
+    }
+}
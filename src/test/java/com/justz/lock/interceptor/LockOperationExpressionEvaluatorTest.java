@@ -0,0 +1,46 @@
+package com.justz.lock.interceptor;
+
+import org.junit.Test;
+import org.springframework.expression.Expression;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LockOperationExpressionEvaluatorTest {
+
+    private final LockOperationExpressionEvaluator evaluator =
+            new LockOperationExpressionEvaluator(getClass().getClassLoader());
+
+    @Test
+    public void literalKeysAreNotExpressions() {
+        assertFalse(LockOperationExpressionEvaluator.isExpression("job#nightly"));
+        assertFalse(LockOperationExpressionEvaluator.isExpression("{order}:nightly"));
+        assertTrue(LockOperationExpressionEvaluator.isExpression("order:#{#p0}"));
+    }
+
+    @Test
+    public void templateReferencesArguments() throws NoSuchMethodException {
+        Method method = Orders.class.getMethod("pay", String.class, int.class);
+        Expression expression = evaluator.parseExpression("order:#{#p0}:#{#a1 + 1}:#{#root.methodName}");
+
+        // evaluated several times, so that the compiled form is used too
+        for (int i = 0; i < 5; i++) {
+            assertEquals("order:c1:3:pay", evaluator.evaluate(expression, method, new Object[] {"c1", 2},
+                    null, Orders.class));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected() throws NoSuchMethodException {
+        Method method = Orders.class.getMethod("pay", String.class, int.class);
+        evaluator.evaluate(evaluator.parseExpression("#{#p0}"), method, new Object[] {null, 2}, null, Orders.class);
+    }
+
+    public interface Orders {
+
+        void pay(String customerId, int region);
+    }
+}
@@ -0,0 +1,103 @@
+package com.justz.lock.interceptor;
+
+import org.junit.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShardedLockManagerTest {
+
+    private static final int KEYS = 20000;
+
+    @Test
+    public void addingAnInstanceOnlyMovesKeysToIt() {
+        ShardedLockManager before = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d");
+        ShardedLockManager after = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d", "redis-e");
+
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "order:" + i;
+            String shard = after.getShardName(key);
+            if (!shard.equals(before.getShardName(key))) {
+                assertEquals("redis-e", shard);
+                moved++;
+            }
+        }
+        // about the share of the new instance, 1/5
+        assertTrue("moved " + moved, moved > KEYS * 0.14 && moved < KEYS * 0.26);
+    }
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        ShardedLockManager lockManager = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d");
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            String shard = lockManager.getShardName("order:" + i);
+            Integer count = counts.get(shard);
+            counts.put(shard, count == null ? 1 : count + 1);
+        }
+        assertEquals(4, counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            assertTrue(count.toString(), count.getValue() > KEYS / 4 * 0.75 && count.getValue() < KEYS / 4 * 1.25);
+        }
+    }
+
+    @Test
+    public void assignmentDoesNotDependOnInstanceOrder() {
+        ShardedLockManager lockManager = shardedLockManager("redis-a", "redis-b", "redis-c");
+        ShardedLockManager reversed = shardedLockManager("redis-c", "redis-b", "redis-a");
+
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals(lockManager.getShardName("order:" + i), reversed.getShardName("order:" + i));
+        }
+    }
+
+    @Test
+    public void onlyHashTagIsHashed() {
+        ShardedLockManager lockManager = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d");
+
+        String shard = lockManager.getShardName("order");
+        for (int i = 0; i < 100; i++) {
+            assertEquals(shard, lockManager.getShardName("{order}:" + i));
+        }
+    }
+
+    @Test
+    public void retryStrategyViewKeepsTheAssignment() {
+        ShardedLockManager lockManager = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d");
+        ShardedLockManager view = (ShardedLockManager) lockManager.withRetryStrategy(new FixedRetryStrategy(10));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(lockManager.getShardName("order:" + i), view.getShardName("order:" + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void multiKeyLockAcrossInstancesIsRejected() {
+        ShardedLockManager lockManager = shardedLockManager("redis-a", "redis-b", "redis-c", "redis-d");
+
+        String first = "order:0";
+        String other = first;
+        for (int i = 1; lockManager.getShardName(other).equals(lockManager.getShardName(first)); i++) {
+            other = "order:" + i;
+        }
+        lockManager.lock(Arrays.asList(first, other), 0, 10000);
+    }
+
+    private static ShardedLockManager shardedLockManager(String... names) {
+        Map<String, RedisConnectionFactory> connectionFactories = new LinkedHashMap<>();
+        for (String name : names) {
+            // never connected, the assignment of the keys does not need the instances
+            connectionFactories.put(name, new JedisConnectionFactory());
+        }
+        return new ShardedLockManager(connectionFactories);
+    }
+}
@@ -0,0 +1,73 @@
+package com.justz.lock.interceptor;
+
+import com.justz.lock.annotation.LockParam;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimpleKeyGeneratorTest {
+
+    @Test
+    public void singleAndMultiKeysAreEqual() throws NoSuchMethodException {
+        SimpleKeyGenerator keyGenerator = new SimpleKeyGenerator();
+
+        assertEquals("order:123", generate(keyGenerator, 123L));
+        assertEquals(Arrays.asList("order:123", "order:456"), generateKeys(keyGenerator, 123L, 456L));
+    }
+
+    @Test
+    public void hashTagParamIsEnclosedInBraces() throws NoSuchMethodException {
+        SimpleKeyGenerator keyGenerator = new SimpleKeyGenerator();
+        Method pay = Orders.class.getMethod("payOfCustomer", Long.class, Long.class);
+        Method payAll = Orders.class.getMethod("payAllOfCustomer", Long.class, List.class);
+
+        assertEquals("order:{42}:123", keyGenerator.generate(Orders.class, pay, "order", 42L, 123L));
+        assertEquals(Arrays.asList("order:{42}:123", "order:{42}:456"),
+                keyGenerator.generateKeys(Orders.class, payAll, "order", 42L, Arrays.asList(123L, 456L)));
+    }
+
+    @Test
+    public void singleHashTagParamIsNotReturnedAsIs() throws NoSuchMethodException {
+        SimpleKeyGenerator keyGenerator = new SimpleKeyGenerator();
+        Method method = Orders.class.getMethod("payOfCustomer", String.class);
+
+        assertEquals("{42}", keyGenerator.generate(Orders.class, method, "", "42"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void collectionCanNotBeHashTag() throws NoSuchMethodException {
+        Method method = Orders.class.getMethod("payAllTagged", List.class);
+        new SimpleKeyGenerator().generateKeys(Orders.class, method, "order", Arrays.asList(123L, 456L));
+    }
+
+    private String generate(SimpleKeyGenerator keyGenerator, Long id) throws NoSuchMethodException {
+        Method method = Orders.class.getMethod("pay", Long.class);
+        return keyGenerator.generate(Orders.class, method, "order", id);
+    }
+
+    private Collection<String> generateKeys(SimpleKeyGenerator keyGenerator, Long... ids)
+            throws NoSuchMethodException {
+        Method method = Orders.class.getMethod("payAll", List.class);
+        return keyGenerator.generateKeys(Orders.class, method, "order", Arrays.asList(ids));
+    }
+
+    public interface Orders {
+
+        void pay(@LockParam Long id);
+
+        void payAll(@LockParam List<Long> ids);
+
+        void payOfCustomer(@LockParam(hashTag = true) Long customerId, @LockParam Long id);
+
+        void payAllOfCustomer(@LockParam(hashTag = true) Long customerId, @LockParam List<Long> ids);
+
+        void payOfCustomer(@LockParam(hashTag = true) String customerId);
+
+        void payAllTagged(@LockParam(hashTag = true) List<Long> ids);
+    }
+}